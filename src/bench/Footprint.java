@@ -0,0 +1,110 @@
+package bench;
+
+/*
+    Measures how much memory a set takes per element, on the heap and
+    in direct buffers, and how fast member is on it, for large sizes.
+    The set is filled in descending order, so that the lists only ever
+    insert right after their head and filling a million elements takes
+    no time.
+
+    With sets=N it builds N sets of size elements each instead, for
+    small sizes, where what a set costs before its first element
+    matters as much as what each element costs. With peak=N each set is
+    filled with N elements first, and all but size of them are removed,
+    to see what a set keeps of the memory it once needed.
+
+        java bench.Footprint impl=transactional size=1000000 time=5000
+        java bench.Footprint impl=transactional size=10 sets=100000
+        java bench.Footprint impl=splitordered size=1000 peak=1000000
+*/
+
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.SplittableRandom;
+
+import test.Set;
+
+public class Footprint {
+
+    private static volatile long sink;
+
+    private static long usedHeap(MemoryMXBean memory) {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+
+    private static long usedDirect() {
+        long used = 0;
+        for (BufferPoolMXBean pool : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class)) {
+            if (pool.getName().equals("direct")) {
+                used += pool.getMemoryUsed();
+            }
+        }
+        return used;
+    }
+
+    public static void main(String[] args) throws Exception {
+        String impl = "transactional";
+        int size = 1000000;
+        int sets = 1;
+        int peak = 0;
+        long time = 5000;
+        for (String arg : args) {
+            String[] option = arg.split("=", 2);
+            if (option[0].equals("impl")) {
+                impl = option[1];
+            } else if (option[0].equals("size")) {
+                size = Integer.parseInt(option[1]);
+            } else if (option[0].equals("peak")) {
+                peak = Integer.parseInt(option[1]);
+            } else if (option[0].equals("sets")) {
+                sets = Integer.parseInt(option[1]);
+            } else if (option[0].equals("time")) {
+                time = Long.parseLong(option[1]);
+            } else {
+                throw new IllegalArgumentException("Unknown argument " + arg);
+            }
+        }
+
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        long before = usedHeap(memory);
+        long directBefore = usedDirect();
+        int filled = Math.max(size, peak);
+        Set[] all = new Set[sets];
+        for (int j = 0; j < sets; j++) {
+            all[j] = Implementations.create(impl, 2 * filled);
+            for (int i = filled - 1; i >= 0; i--) {
+                all[j].add(2 * i);
+            }
+            for (int i = size; i < filled; i++) {
+                all[j].remove(2 * i);
+            }
+        }
+        long after = usedHeap(memory);
+        long directAfter = usedDirect();
+        long elements = (long) size * sets;
+        System.out.printf("%s: %d elements%s%s, %.1f heap and %.1f direct bytes per element%n",
+                impl, size, peak > size ? " (after " + peak + ")" : "",
+                sets == 1 ? "" : " in each of " + sets + " sets",
+                (after - before) / (double) elements,
+                (directAfter - directBefore) / (double) elements);
+
+        /* Half of the lookups hit, half miss */
+        SplittableRandom random = new SplittableRandom(0);
+        long calls = 0, hits = 0;
+        long end = System.nanoTime() + time * 1000000;
+        while (System.nanoTime() < end) {
+            for (int i = 0; i < 16; i++) {
+                if (all[sets == 1 ? 0 : random.nextInt(sets)].member(random.nextInt(2 * size))) {
+                    hits++;
+                }
+                calls++;
+            }
+        }
+        sink = hits;
+        System.out.printf("%s: %.1f member calls per second%n", impl, calls / (time / 1000.0));
+    }
+}
@@ -0,0 +1,89 @@
+package bench;
+
+import test.Set;
+
+/**
+ * The test.Set implementations the benchmarks know about, by name.
+ * A new implementation only needs a line in NAMES and one in create.
+ * The range of the keys the set will see is only used by the sets
+ * that partition it or are bounded by it.
+ */
+public final class Implementations {
+
+    public static final String[] NAMES = {
+            "synchronized",
+            "stamped",
+            "flatcombining",
+            "transactional",
+            "transactional-gv4",
+            "transactional-gv5",
+            "transactional-backoff",
+            "transactional-epoch",
+            "skiplist",
+            "offheap",
+            "unrolled",
+            "sharded",
+            "bitmap",
+            "bitmap-compressed",
+            "lazy",
+            "lockfree",
+            "splitordered",
+            "adaptive"
+    };
+
+    /* As many shards as this, whatever the number of threads */
+    private static final int SHARDS = 16;
+
+    /* The default key range of SetBenchmark */
+    private static final int KEY_RANGE = 10000;
+
+    private Implementations() {
+    }
+
+    public static Set create(String name) {
+        return create(name, KEY_RANGE);
+    }
+
+    public static Set create(String name, int keyRange) {
+        if (name.equals("synchronized")) {
+            return new sequential.SetList();
+        } else if (name.equals("stamped")) {
+            return new sequential.StampedSetList();
+        } else if (name.equals("flatcombining")) {
+            return new concurrent.FlatCombiningSet();
+        } else if (name.equals("transactional")) {
+            return new concurrent.SetList();
+        } else if (name.equals("transactional-gv4")) {
+            return new concurrent.SetList(new concurrent.SharedIncrementClock());
+        } else if (name.equals("transactional-gv5")) {
+            return new concurrent.SetList(new concurrent.LazyClock());
+        } else if (name.equals("transactional-backoff")) {
+            return new concurrent.SetList(new concurrent.StrictClock(),
+                    new concurrent.ExponentialBackoff(16, 4096));
+        } else if (name.equals("transactional-epoch")) {
+            return new concurrent.SetList(new concurrent.StrictClock(),
+                    new concurrent.NoBackoff(), new concurrent.EpochReclamation());
+        } else if (name.equals("skiplist")) {
+            return new concurrent.SkipList();
+        } else if (name.equals("offheap")) {
+            return new concurrent.OffHeapSetList();
+        } else if (name.equals("unrolled")) {
+            return new concurrent.UnrolledList();
+        } else if (name.equals("sharded")) {
+            return new concurrent.ShardedSet(SHARDS, 0, keyRange);
+        } else if (name.equals("bitmap")) {
+            return new concurrent.BitmapSet(0, keyRange);
+        } else if (name.equals("bitmap-compressed")) {
+            return new concurrent.BitmapSet(0, keyRange, true);
+        } else if (name.equals("lazy")) {
+            return new concurrent.LazyList();
+        } else if (name.equals("lockfree")) {
+            return new concurrent.LockFreeList();
+        } else if (name.equals("splitordered")) {
+            return new concurrent.SplitOrderedSet();
+        } else if (name.equals("adaptive")) {
+            return new concurrent.AdaptiveSet();
+        }
+        throw new IllegalArgumentException("Unknown implementation " + name);
+    }
+}
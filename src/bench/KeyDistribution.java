@@ -0,0 +1,180 @@
+package bench;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * How the keys of a workload are distributed over [0, keyRange):
+ *
+ *   uniform              every key equally likely
+ *   zipf:THETA           key k has probability proportional to 1/(k+1)^THETA,
+ *                        for 0 < THETA < 1 (0.99 is the usual YCSB value)
+ *   hotspot:KEYS:OPS     a fraction OPS of the calls go to the first
+ *                        fraction KEYS of the range, e.g. hotspot:0.01:0.9
+ *   ascending            each thread walks the range in order from a
+ *                        random starting point, wrapping around
+ *   partitioned:PARTS    the range is cut into PARTS slices of the same
+ *                        width, which the threads take in turn in the
+ *                        order they are created, each drawing uniformly
+ *                        from its own slice
+ *
+ * The hot keys of zipf and hotspot are the smallest ones, so that
+ * they form a contiguous hot range as they do in our traffic.
+ */
+public abstract class KeyDistribution {
+
+    protected final int keyRange;
+
+    protected KeyDistribution(int keyRange) {
+        this.keyRange = keyRange;
+    }
+
+    public abstract KeyGenerator generator(SplittableRandom random);
+
+    public static KeyDistribution parse(String spec, int keyRange) {
+        String[] parts = spec.split(":");
+        String name = parts[0];
+        if (name.equals("uniform") && parts.length == 1) {
+            return new Uniform(keyRange);
+        } else if (name.equals("zipf") && parts.length == 2) {
+            return new Zipfian(keyRange, Double.parseDouble(parts[1]));
+        } else if (name.equals("hotspot") && parts.length == 3) {
+            return new Hotspot(keyRange, Double.parseDouble(parts[1]), Double.parseDouble(parts[2]));
+        } else if (name.equals("ascending") && parts.length == 1) {
+            return new Ascending(keyRange);
+        } else if (name.equals("partitioned") && parts.length == 2) {
+            return new Partitioned(keyRange, Integer.parseInt(parts[1]));
+        }
+        throw new IllegalArgumentException("Unknown key distribution " + spec);
+    }
+
+    private static final class Uniform extends KeyDistribution {
+        Uniform(int keyRange) {
+            super(keyRange);
+        }
+
+        public KeyGenerator generator(final SplittableRandom random) {
+            return new KeyGenerator() {
+                public int nextKey() {
+                    return random.nextInt(keyRange);
+                }
+            };
+        }
+    }
+
+    /**
+     * The generator of Gray et al., "Quickly generating billion-record
+     * synthetic databases", as used by YCSB. Only the constants depend
+     * on the range, and computing zeta is linear, so it is done once.
+     */
+    private static final class Zipfian extends KeyDistribution {
+        private final double theta;
+        private final double zetaN;
+        private final double alpha;
+        private final double eta;
+
+        Zipfian(int keyRange, double theta) {
+            super(keyRange);
+            if (theta <= 0 || theta >= 1) {
+                throw new IllegalArgumentException("The zipf parameter must be in (0, 1), not " + theta);
+            }
+            this.theta = theta;
+            this.zetaN = zeta(keyRange, theta);
+            this.alpha = 1 / (1 - theta);
+            this.eta = (1 - Math.pow(2.0 / keyRange, 1 - theta)) / (1 - zeta(2, theta) / zetaN);
+        }
+
+        private static double zeta(int n, double theta) {
+            double sum = 0;
+            for (int i = 1; i <= n; i++) {
+                sum += 1 / Math.pow(i, theta);
+            }
+            return sum;
+        }
+
+        public KeyGenerator generator(final SplittableRandom random) {
+            return new KeyGenerator() {
+                public int nextKey() {
+                    double u = random.nextDouble();
+                    double uz = u * zetaN;
+                    if (uz < 1) {
+                        return 0;
+                    }
+                    if (uz < 1 + Math.pow(0.5, theta)) {
+                        return 1;
+                    }
+                    int key = (int) (keyRange * Math.pow(eta * u - eta + 1, alpha));
+                    return Math.min(key, keyRange - 1);
+                }
+            };
+        }
+    }
+
+    private static final class Hotspot extends KeyDistribution {
+        private final int hotKeys;
+        private final double hotOperations;
+
+        Hotspot(int keyRange, double keyFraction, double operationFraction) {
+            super(keyRange);
+            if (keyFraction <= 0 || keyFraction > 1 || operationFraction < 0 || operationFraction > 1) {
+                throw new IllegalArgumentException("Invalid hotspot " + keyFraction + ":" + operationFraction);
+            }
+            this.hotKeys = Math.max(1, (int) (keyRange * keyFraction));
+            this.hotOperations = operationFraction;
+        }
+
+        public KeyGenerator generator(final SplittableRandom random) {
+            return new KeyGenerator() {
+                public int nextKey() {
+                    if (hotKeys == keyRange || random.nextDouble() < hotOperations) {
+                        return random.nextInt(hotKeys);
+                    }
+                    return hotKeys + random.nextInt(keyRange - hotKeys);
+                }
+            };
+        }
+    }
+
+    private static final class Ascending extends KeyDistribution {
+        Ascending(int keyRange) {
+            super(keyRange);
+        }
+
+        public KeyGenerator generator(SplittableRandom random) {
+            final int start = random.nextInt(keyRange);
+            return new KeyGenerator() {
+                private int next = start;
+
+                public int nextKey() {
+                    int key = next;
+                    next = next + 1 == keyRange ? 0 : next + 1;
+                    return key;
+                }
+            };
+        }
+    }
+
+    private static final class Partitioned extends KeyDistribution {
+        private final int parts;
+        private final AtomicInteger started = new AtomicInteger(0);
+
+        Partitioned(int keyRange, int parts) {
+            super(keyRange);
+            if (parts < 1 || parts > keyRange) {
+                throw new IllegalArgumentException("Cannot cut " + keyRange + " keys in " + parts + " parts");
+            }
+            this.parts = parts;
+        }
+
+        public KeyGenerator generator(final SplittableRandom random) {
+            int part = started.getAndIncrement() % parts;
+            final int from = (int) ((long) keyRange * part / parts);
+            final int width = (int) ((long) keyRange * (part + 1) / parts) - from;
+            return new KeyGenerator() {
+                public int nextKey() {
+                    return from + random.nextInt(width);
+                }
+            };
+        }
+    }
+}
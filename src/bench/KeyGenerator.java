@@ -0,0 +1,9 @@
+package bench;
+
+/**
+ * Produces the keys used by one benchmark thread. Generators may keep
+ * state, so each thread has its own.
+ */
+public interface KeyGenerator {
+    int nextKey();
+}
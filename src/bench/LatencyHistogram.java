@@ -0,0 +1,97 @@
+package bench;
+
+import java.util.Arrays;
+
+/**
+ * A log-linear histogram of latencies in nanoseconds, in the spirit of
+ * HdrHistogram: values below 2^SUB_BUCKET_BITS are counted exactly,
+ * larger ones with SUB_BUCKET_BITS - 1 significant bits, that is with
+ * a relative error below 1/64. All the buckets are allocated upfront,
+ * so recording is a few shifts and one increment.
+ *
+ * A histogram has a single writer and no synchronisation; each thread
+ * records into its own and they are merged once the threads are done.
+ */
+public final class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 7;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int HALF = SUB_BUCKETS / 2;
+    /* Shifts go up to 63 - SUB_BUCKET_BITS + 1 for the largest longs */
+    private static final int BUCKETS = SUB_BUCKETS + (64 - SUB_BUCKET_BITS) * HALF;
+
+    private final long[] counts = new long[BUCKETS];
+    private long total;
+    private long max;
+
+    private static int index(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int shift = 64 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        int top = (int) (value >>> shift);
+        return SUB_BUCKETS + (shift - 1) * HALF + (top - HALF);
+    }
+
+    /* The largest value that falls in bucket index */
+    private static long highestValue(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int shift = (index - SUB_BUCKETS) / HALF + 1;
+        long top = HALF + (index - SUB_BUCKETS) % HALF;
+        return ((top + 1) << shift) - 1;
+    }
+
+    public void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+        counts[index(nanos)]++;
+        total++;
+        if (nanos > max) {
+            max = nanos;
+        }
+    }
+
+    public void add(LatencyHistogram other) {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] += other.counts[i];
+        }
+        total += other.total;
+        max = Math.max(max, other.max);
+    }
+
+    public void reset() {
+        Arrays.fill(counts, 0);
+        total = 0;
+        max = 0;
+    }
+
+    public long count() {
+        return total;
+    }
+
+    public long max() {
+        return max;
+    }
+
+    /**
+     * The smallest recorded value (up to the bucket precision) such
+     * that a fraction percentile / 100 of the values are not larger.
+     */
+    public long percentile(double percentile) {
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(highestValue(i), max);
+            }
+        }
+        return max;
+    }
+}
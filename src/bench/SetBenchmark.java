@@ -0,0 +1,629 @@
+package bench;
+
+/*
+    Throughput benchmark for the test.Set implementations.
+
+    It follows the methodology of JMH, which we cannot ship here:
+    every configuration runs in a fresh JVM (a fork) so that the JIT
+    profile of one implementation does not pollute the next, it is
+    measured over fixed-time iterations after some warmup iterations
+    whose results are thrown away, and the result of every call is
+    consumed so that the JIT cannot remove it.
+
+    Arguments are name=value pairs; a comma separated list of values
+    runs every combination. For instance
+
+        java bench.SetBenchmark impl=transactional,skiplist threads=1,4 mix=90/5/5
+
+    The keys are drawn from [0, keys) following dist (see KeyDistribution
+    for the choices), and the set initially holds fill of them. A run
+    lasts warmup + iterations periods of time milliseconds each, and
+    reports the throughput of each kind of operation.
+
+    With latency=true every call is also timed into a per-thread
+    LatencyHistogram; the histograms of the measured iterations are
+    merged per operation, and their percentiles are written to
+    OUTPUT.csv and OUTPUT.json (output=latency by default) in the
+    working directory, next to the results of Benchmarks. Timing every
+    call costs two System.nanoTime, so the throughput of such runs is
+    not comparable with the others.
+
+    With gc=true the benchmark also reports, like the gc profiler of
+    JMH, how many bytes the worker threads allocated per operation over
+    the measured iterations, and how many collections ran meanwhile.
+
+    The groups parameter runs asymmetric benchmarks instead of the
+    symmetric threads/mix ones: groups=7:1 starts seven threads doing
+    only member and one thread doing only add and remove, and reports
+    the throughput of both groups separately.
+*/
+
+import java.io.BufferedReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CyclicBarrier;
+
+import test.Set;
+
+public class SetBenchmark {
+
+    private static final String[][] DEFAULTS = {
+            {"impl", "synchronized,transactional,skiplist,lockfree,splitordered"},
+            {"threads", "1,2,4"},
+            {"groups", ""},
+            {"mix", "90/5/5"},
+            {"keys", "10000"},
+            {"dist", "uniform"},
+            {"fill", "5000"},
+            {"warmup", "3"},
+            {"iterations", "5"},
+            {"time", "1000"},
+            {"forks", "1"},
+            {"seed", "0"},
+            {"latency", "false"},
+            {"gc", "false"},
+            {"output", "latency"}
+    };
+
+    private static final String[] LATENCY_COLUMNS = {
+            "impl", "threads", "readers", "writers", "mix", "keys", "dist", "fill",
+            "operation", "count", "p50", "p90", "p99", "p99.9", "max"
+    };
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9};
+    private static final String[] PERCENTILE_NAMES = {"p50", "p90", "p99", "p99.9"};
+    private static final java.util.Set<String> TEXT_COLUMNS =
+            new java.util.HashSet<String>(Arrays.asList("impl", "mix", "dist", "operation"));
+
+    /* How a fork hands its latency rows back to its parent */
+    private static final String LATENCY_MARKER = "#latency,";
+
+    /* What a worker thread does */
+    private static final int MIXED = 0;
+    private static final int READER = 1;
+    private static final int WRITER = 2;
+
+    /* Where the workers store what they computed, so that it is never dead */
+    private static volatile long sink;
+
+    /**
+     * Shared between the main thread and the workers of one run.
+     */
+    private static final class Control {
+        final CyclicBarrier start;
+        final CyclicBarrier end;
+        volatile boolean running = false;
+        volatile boolean done = false;
+
+        Control(int workers) {
+            start = new CyclicBarrier(workers + 1);
+            end = new CyclicBarrier(workers + 1);
+        }
+    }
+
+    private static final class Worker extends Thread {
+        private final Set set;
+        private final Workload workload;
+        private final KeyGenerator keys;
+        private final int role;
+        private final Control control;
+        private final SplittableRandom random;
+
+        /* Completed calls per operation, only read between iterations */
+        final long[] operations = new long[Workload.OPERATIONS.length];
+        /* Latencies per operation, or null if they are not recorded */
+        final LatencyHistogram[] latencies;
+
+        Worker(Set set, Workload workload, int role, Control control, long seed, boolean latency) {
+            this.set = set;
+            this.workload = workload;
+            this.role = role;
+            this.control = control;
+            this.random = new SplittableRandom(seed);
+            this.keys = workload.keys(random.split());
+            if (latency) {
+                latencies = new LatencyHistogram[Workload.OPERATIONS.length];
+                for (int op = 0; op < latencies.length; op++) {
+                    latencies[op] = new LatencyHistogram();
+                }
+            } else {
+                latencies = null;
+            }
+        }
+
+        private boolean call(int operation, int key) {
+            if (operation == Workload.MEMBER) {
+                return set.member(key);
+            } else if (operation == Workload.ADD) {
+                return set.add(key);
+            }
+            return set.remove(key);
+        }
+
+        private int nextOperation() {
+            if (role == READER) {
+                return Workload.MEMBER;
+            } else if (role == WRITER) {
+                return random.nextBoolean() ? Workload.ADD : Workload.REMOVE;
+            }
+            return workload.nextOperation(random);
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (true) {
+                    control.start.await();
+                    if (control.done) {
+                        return;
+                    }
+
+                    long hits = 0;
+                    while (control.running) {
+                        int operation = nextOperation();
+                        int key = keys.nextKey();
+                        boolean result;
+                        if (latencies == null) {
+                            result = call(operation, key);
+                        } else {
+                            long start = System.nanoTime();
+                            result = call(operation, key);
+                            latencies[operation].record(System.nanoTime() - start);
+                        }
+                        if (result) {
+                            hits++;
+                        }
+                        operations[operation]++;
+                    }
+                    sink += hits;
+
+                    control.end.await();
+                }
+            } catch (InterruptedException e) {
+                throw new RuntimeException("Thread interrupted");
+            } catch (BrokenBarrierException e) {
+                throw new RuntimeException("Benchmark aborted");
+            }
+        }
+    }
+
+    /**
+     * One point of the parameter matrix.
+     */
+    private static final class Config {
+        String impl;
+        int threads;
+        int readers;
+        int writers;
+        String mix;
+        int keys;
+        String dist;
+        int fill;
+
+        boolean isGroup() {
+            return readers + writers > 0;
+        }
+
+        String describe() {
+            String shape = isGroup()
+                    ? String.format("groups=%d:%d", readers, writers)
+                    : String.format("threads=%d mix=%s", threads, mix);
+            return String.format("impl=%s %s keys=%d dist=%s fill=%d", impl, shape, keys, dist, fill);
+        }
+
+        /* The leading columns of a latency row */
+        List<String> columns() {
+            List<String> columns = new ArrayList<String>();
+            columns.add(impl);
+            columns.add(Integer.toString(threads));
+            columns.add(Integer.toString(readers));
+            columns.add(Integer.toString(writers));
+            columns.add(isGroup() ? "" : mix);
+            columns.add(Integer.toString(keys));
+            columns.add(dist);
+            columns.add(Integer.toString(fill));
+            return columns;
+        }
+
+        List<String> toArgs() {
+            List<String> args = new ArrayList<String>();
+            args.add("impl=" + impl);
+            if (isGroup()) {
+                args.add("groups=" + readers + ":" + writers);
+            } else {
+                args.add("threads=" + threads);
+                args.add("mix=" + mix);
+            }
+            args.add("keys=" + keys);
+            args.add("dist=" + dist);
+            args.add("fill=" + fill);
+            return args;
+        }
+    }
+
+    private static Map<String, String> parse(String[] args) {
+        Map<String, String> options = new LinkedHashMap<String, String>();
+        for (String[] option : DEFAULTS) {
+            options.put(option[0], option[1]);
+        }
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (eq < 0 || !options.containsKey(arg.substring(0, eq))) {
+                throw new IllegalArgumentException("Unknown argument " + arg);
+            }
+            options.put(arg.substring(0, eq), arg.substring(eq + 1));
+        }
+        return options;
+    }
+
+    private static String[] values(Map<String, String> options, String name) {
+        String value = options.get(name);
+        return value.isEmpty() ? new String[0] : value.split(",");
+    }
+
+    private static List<Config> matrix(Map<String, String> options) {
+        /* The thread layout: either threads with a mix, or reader:writer groups */
+        List<Config> shapes = new ArrayList<Config>();
+        String[] groups = values(options, "groups");
+        if (groups.length > 0) {
+            for (String group : groups) {
+                String[] parts = group.split(":");
+                Config shape = new Config();
+                shape.readers = Integer.parseInt(parts[0]);
+                shape.writers = Integer.parseInt(parts[1]);
+                shape.threads = shape.readers + shape.writers;
+                shape.mix = "100/0/0";
+                shapes.add(shape);
+            }
+        } else {
+            for (String threads : values(options, "threads")) {
+                for (String mix : values(options, "mix")) {
+                    Config shape = new Config();
+                    shape.threads = Integer.parseInt(threads);
+                    shape.mix = mix;
+                    shapes.add(shape);
+                }
+            }
+        }
+
+        List<Config> configs = new ArrayList<Config>();
+        for (String impl : values(options, "impl")) {
+            for (String keys : values(options, "keys")) {
+                for (String dist : values(options, "dist")) {
+                    for (String fill : values(options, "fill")) {
+                        for (Config shape : shapes) {
+                            Config config = new Config();
+                            config.impl = impl;
+                            config.threads = shape.threads;
+                            config.readers = shape.readers;
+                            config.writers = shape.writers;
+                            config.mix = shape.mix;
+                            config.keys = Integer.parseInt(keys);
+                            config.dist = dist;
+                            config.fill = Integer.parseInt(fill);
+                            configs.add(config);
+                        }
+                    }
+                }
+            }
+        }
+        return configs;
+    }
+
+    /**
+     * Runs config in a fresh JVM with the same class path, echoing what
+     * it prints, and returns its latency rows.
+     */
+    private static List<List<String>> fork(Config config, Map<String, String> options)
+            throws IOException, InterruptedException {
+        List<String> command = new ArrayList<String>();
+        command.add(System.getProperty("java.home") + "/bin/java");
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(SetBenchmark.class.getName());
+        command.addAll(config.toArgs());
+        for (String name : new String[]{"warmup", "iterations", "time", "seed", "latency", "gc"}) {
+            command.add(name + "=" + options.get(name));
+        }
+        command.add("forks=0");
+        command.add("output=");
+
+        Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+        List<List<String>> rows = new ArrayList<List<String>>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()));
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.startsWith(LATENCY_MARKER)) {
+                rows.add(Arrays.asList(line.substring(LATENCY_MARKER.length()).split(",", -1)));
+            } else {
+                System.out.println(line);
+            }
+        }
+        if (process.waitFor() != 0) {
+            throw new RuntimeException("Fork failed for " + config.describe());
+        }
+        return rows;
+    }
+
+    /**
+     * Runs config in this JVM and returns its latency rows, if any.
+     */
+    private static List<List<String>> run(Config config, Map<String, String> options)
+            throws InterruptedException, BrokenBarrierException {
+        int warmup = Integer.parseInt(options.get("warmup"));
+        int iterations = Integer.parseInt(options.get("iterations"));
+        long time = Long.parseLong(options.get("time"));
+        long seed = Long.parseLong(options.get("seed"));
+        boolean latency = Boolean.parseBoolean(options.get("latency"));
+        boolean gc = Boolean.parseBoolean(options.get("gc"));
+
+        Workload workload = Workload.parse(config.mix, config.keys, config.dist, config.fill);
+        Set set = Implementations.create(config.impl, config.keys);
+        workload.prefill(set, new SplittableRandom(seed));
+
+        Control control = new Control(config.threads);
+        Worker[] workers = new Worker[config.threads];
+        for (int i = 0; i < workers.length; i++) {
+            int role = MIXED;
+            if (config.isGroup()) {
+                role = i < config.readers ? READER : WRITER;
+            }
+            workers[i] = new Worker(set, workload, role, control, seed + i + 1, latency);
+            workers[i].start();
+        }
+
+        System.out.println("# " + config.describe());
+        double[] scores = new double[iterations];
+        double[] readerScores = new double[iterations];
+        double[] writerScores = new double[iterations];
+        long[] totals = new long[Workload.OPERATIONS.length];
+        double measuredMillis = 0;
+
+        long[] workerIds = new long[workers.length];
+        for (int w = 0; w < workers.length; w++) {
+            workerIds[w] = workers[w].getId();
+        }
+        long allocated = 0;
+        long collections = 0;
+        long collectionMillis = 0;
+
+        for (int i = 0; i < warmup + iterations; i++) {
+            long[][] before = new long[workers.length][];
+            for (int w = 0; w < workers.length; w++) {
+                before[w] = workers[w].operations.clone();
+            }
+
+            long allocatedBefore = gc ? allocatedBytes(workerIds) : 0;
+            long[] collectionsBefore = gc ? collections() : null;
+
+            control.running = true;
+            control.start.await();
+            long startTime = System.nanoTime();
+            Thread.sleep(time);
+            control.running = false;
+            long elapsed = System.nanoTime() - startTime;
+            control.end.await();
+
+            double millis = elapsed / 1e6;
+            long readerOps = 0, writerOps = 0;
+            long[] perOperation = new long[Workload.OPERATIONS.length];
+            for (int w = 0; w < workers.length; w++) {
+                for (int op = 0; op < perOperation.length; op++) {
+                    long count = workers[w].operations[op] - before[w][op];
+                    perOperation[op] += count;
+                    if (workers[w].role == READER) {
+                        readerOps += count;
+                    } else {
+                        writerOps += count;
+                    }
+                }
+            }
+
+            double score = (readerOps + writerOps) / millis;
+            boolean measured = i >= warmup;
+            System.out.printf("%s %d: %.1f ops/ms%n",
+                    measured ? "Iteration" : "Warmup iteration",
+                    measured ? i - warmup + 1 : i + 1, score);
+            if (measured) {
+                scores[i - warmup] = score;
+                readerScores[i - warmup] = readerOps / millis;
+                writerScores[i - warmup] = writerOps / millis;
+                for (int op = 0; op < totals.length; op++) {
+                    totals[op] += perOperation[op];
+                }
+                measuredMillis += millis;
+                if (gc) {
+                    long[] collectionsAfter = collections();
+                    allocated += allocatedBytes(workerIds) - allocatedBefore;
+                    collections += collectionsAfter[0] - collectionsBefore[0];
+                    collectionMillis += collectionsAfter[1] - collectionsBefore[1];
+                }
+            }
+            if (latency && i == warmup - 1) {
+                for (Worker worker : workers) {
+                    for (LatencyHistogram histogram : worker.latencies) {
+                        histogram.reset();
+                    }
+                }
+            }
+        }
+
+        control.done = true;
+        control.start.await();
+        for (Worker worker : workers) {
+            worker.join();
+        }
+
+        StringBuilder result = new StringBuilder();
+        result.append(String.format("Result %s: %s ops/ms", config.describe(), summary(scores)));
+        if (config.isGroup()) {
+            result.append(String.format(" (readers %s, writers %s)",
+                    summary(readerScores), summary(writerScores)));
+        } else {
+            result.append(" (");
+            for (int op = 0; op < totals.length; op++) {
+                result.append(String.format("%s%s %.1f", op > 0 ? ", " : "",
+                        Workload.OPERATIONS[op], totals[op] / measuredMillis));
+            }
+            result.append(")");
+        }
+        System.out.println(result);
+        if (gc) {
+            long operations = 0;
+            for (long total : totals) {
+                operations += total;
+            }
+            System.out.printf("Allocation: %.1f bytes/op, %.1f MB/s, %d collections (%d ms)%n",
+                    allocated / (double) Math.max(operations, 1),
+                    allocated / 1e6 / (measuredMillis / 1000), collections, collectionMillis);
+        }
+
+        List<List<String>> rows = new ArrayList<List<String>>();
+        if (latency) {
+            for (int op = 0; op < Workload.OPERATIONS.length; op++) {
+                LatencyHistogram merged = new LatencyHistogram();
+                for (Worker worker : workers) {
+                    merged.add(worker.latencies[op]);
+                }
+                if (merged.count() == 0) {
+                    continue;
+                }
+                List<String> row = config.columns();
+                row.add(Workload.OPERATIONS[op]);
+                row.add(Long.toString(merged.count()));
+                StringBuilder line = new StringBuilder();
+                line.append(String.format("Latency %s (ns):", Workload.OPERATIONS[op]));
+                for (int p = 0; p < PERCENTILES.length; p++) {
+                    long value = merged.percentile(PERCENTILES[p]);
+                    row.add(Long.toString(value));
+                    line.append(String.format(" %s %d", PERCENTILE_NAMES[p], value));
+                }
+                row.add(Long.toString(merged.max()));
+                line.append(String.format(" max %d", merged.max()));
+                System.out.println(line);
+                rows.add(row);
+            }
+        }
+        System.out.println();
+        return rows;
+    }
+
+    /* Bytes allocated so far by the given threads, which are all alive */
+    private static long allocatedBytes(long[] threadIds) {
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long sum = 0;
+        for (long bytes : threads.getThreadAllocatedBytes(threadIds)) {
+            sum += bytes;
+        }
+        return sum;
+    }
+
+    /* The number of collections so far, and the milliseconds they took */
+    private static long[] collections() {
+        long[] result = new long[2];
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            result[0] += Math.max(collector.getCollectionCount(), 0);
+            result[1] += Math.max(collector.getCollectionTime(), 0);
+        }
+        return result;
+    }
+
+    private static void writeCsv(String file, List<List<String>> rows) throws IOException {
+        PrintWriter out = new PrintWriter(new FileWriter(file));
+        try {
+            out.println(join(Arrays.asList(LATENCY_COLUMNS)));
+            for (List<String> row : rows) {
+                out.println(join(row));
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    private static void writeJson(String file, List<List<String>> rows) throws IOException {
+        PrintWriter out = new PrintWriter(new FileWriter(file));
+        try {
+            out.println("[");
+            for (int r = 0; r < rows.size(); r++) {
+                List<String> row = rows.get(r);
+                StringBuilder b = new StringBuilder("  {");
+                for (int c = 0; c < LATENCY_COLUMNS.length; c++) {
+                    String value = row.get(c);
+                    b.append(c > 0 ? ", " : "").append('"').append(LATENCY_COLUMNS[c]).append("\": ");
+                    b.append(TEXT_COLUMNS.contains(LATENCY_COLUMNS[c]) ? "\"" + value + "\"" : value);
+                }
+                b.append(r + 1 < rows.size() ? "}," : "}");
+                out.println(b);
+            }
+            out.println("]");
+        } finally {
+            out.close();
+        }
+    }
+
+    private static String join(List<String> values) {
+        StringBuilder b = new StringBuilder();
+        for (String value : values) {
+            if (b.length() > 0) {
+                b.append(',');
+            }
+            b.append(value);
+        }
+        return b.toString();
+    }
+
+    /**
+     * Mean and standard deviation of the iteration scores.
+     */
+    private static String summary(double[] scores) {
+        double sum = 0;
+        for (double score : scores) {
+            sum += score;
+        }
+        double mean = sum / scores.length;
+        double squares = 0;
+        for (double score : scores) {
+            squares += (score - mean) * (score - mean);
+        }
+        double deviation = scores.length > 1 ? Math.sqrt(squares / (scores.length - 1)) : 0;
+        return String.format("%.1f +- %.1f", mean, deviation);
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parse(args);
+        int forks = Integer.parseInt(options.get("forks"));
+        String output = options.get("output");
+
+        List<List<String>> rows = new ArrayList<List<String>>();
+        for (Config config : matrix(options)) {
+            if (forks == 0) {
+                rows.addAll(run(config, options));
+            } else {
+                for (int f = 0; f < forks; f++) {
+                    rows.addAll(fork(config, options));
+                }
+            }
+        }
+
+        if (output.isEmpty()) {
+            /* We are a fork: our parent writes the files */
+            for (List<String> row : rows) {
+                System.out.println(LATENCY_MARKER + join(row));
+            }
+        } else if (!rows.isEmpty()) {
+            writeCsv(output + ".csv", rows);
+            writeJson(output + ".json", rows);
+        }
+    }
+}
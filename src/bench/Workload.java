@@ -0,0 +1,103 @@
+package bench;
+
+import java.util.SplittableRandom;
+
+import test.Set;
+
+/**
+ * What the benchmark threads do: the proportion of member, add and
+ * remove calls, the range of keys they are called with and how those
+ * keys are distributed, and how many keys the set holds initially.
+ */
+public final class Workload {
+
+    public static final int MEMBER = 0;
+    public static final int ADD = 1;
+    public static final int REMOVE = 2;
+    public static final String[] OPERATIONS = {"member", "add", "remove"};
+
+    private final int memberPercent;
+    private final int addPercent;
+    private final int keyRange;
+    private final String distributionName;
+    private final KeyDistribution distribution;
+    private final int fill;
+
+    public Workload(int memberPercent, int addPercent, int keyRange, String distribution, int fill) {
+        if (memberPercent < 0 || addPercent < 0 || memberPercent + addPercent > 100) {
+            throw new IllegalArgumentException("Invalid mix " + memberPercent + "/" + addPercent);
+        }
+        if (fill > keyRange) {
+            throw new IllegalArgumentException("Cannot fill " + fill + " keys out of " + keyRange);
+        }
+        this.memberPercent = memberPercent;
+        this.addPercent = addPercent;
+        this.keyRange = keyRange;
+        this.distributionName = distribution;
+        this.distribution = KeyDistribution.parse(distribution, keyRange);
+        this.fill = fill;
+    }
+
+    /**
+     * Parses a mix written member/add/remove in percents, e.g. 90/5/5.
+     */
+    public static Workload parse(String mix, int keyRange, String distribution, int fill) {
+        String[] parts = mix.split("/");
+        if (parts.length != 3) {
+            throw new IllegalArgumentException("A mix is member/add/remove, not " + mix);
+        }
+        int member = Integer.parseInt(parts[0]);
+        int add = Integer.parseInt(parts[1]);
+        int remove = Integer.parseInt(parts[2]);
+        if (member + add + remove != 100) {
+            throw new IllegalArgumentException("The mix " + mix + " does not add up to 100");
+        }
+        return new Workload(member, add, keyRange, distribution, fill);
+    }
+
+    public String mix() {
+        return memberPercent + "/" + addPercent + "/" + (100 - memberPercent - addPercent);
+    }
+
+    public int keyRange() {
+        return keyRange;
+    }
+
+    public String distribution() {
+        return distributionName;
+    }
+
+    public int fill() {
+        return fill;
+    }
+
+    public int nextOperation(SplittableRandom random) {
+        int p = random.nextInt(100);
+        if (p < memberPercent) {
+            return MEMBER;
+        } else if (p < memberPercent + addPercent) {
+            return ADD;
+        }
+        return REMOVE;
+    }
+
+    /**
+     * Returns the key generator of one thread.
+     */
+    public KeyGenerator keys(SplittableRandom random) {
+        return distribution.generator(random);
+    }
+
+    /**
+     * Adds fill distinct keys to set, drawn uniformly whatever the
+     * distribution of the calls.
+     */
+    public void prefill(Set set, SplittableRandom random) {
+        int added = 0;
+        while (added < fill) {
+            if (set.add(random.nextInt(keyRange))) {
+                added++;
+            }
+        }
+    }
+}
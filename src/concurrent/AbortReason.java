@@ -0,0 +1,17 @@
+package concurrent;
+
+/**
+ *  Why a TL2 transaction had to be restarted.
+ */
+public enum AbortReason {
+    /* A node read during the traversal is newer than rv */
+    VERSION,
+    /* A node read during the traversal is locked by a committer */
+    LOCKED,
+    /* A node changed while its next pointer was being read */
+    INCONSISTENT_READ,
+    /* A node of the write set could not be locked at commit */
+    LOCK_FAILED,
+    /* The read set did not validate after taking wv */
+    VALIDATION
+}
@@ -0,0 +1,279 @@
+package concurrent;
+
+/*
+    Represent a set of integers as a SetList while it is small, and as a
+    SplitOrderedSet once it grows, going back to the list when it
+    shrinks again.
+
+    The design goal is the footprint of the list where it costs little
+    throughput. Measured on a single thread, a list of 16 to 64 keys
+    takes 37 to 89 bytes per key against 95 to 113 for the table, and
+    runs at half to three quarters of its throughput; past that the list
+    falls behind fast (a quarter at 256 keys, an eighth at 512). How
+    far the list keeps up depends on the mix: with reads only it still
+    runs at half the table's speed with 64 keys, with half of the
+    operations updates only up to 48. So the set becomes a table once it
+    holds more than GROW_READS keys, or fewer the larger the share of
+    updates, down to GROW_UPDATES when updates are half of the
+    operations or more. It goes back to a list below SHRINK keys; the
+    gap between the thresholds means that a set hovering around one of
+    them is not copied back and forth, as between two migrations there
+    are at least GROW_UPDATES - SHRINK updates. With only a few keys
+    the table would be both faster and smaller (an empty SetList takes
+    about a kilobyte), but a set which never grew is a list.
+
+    The mix is sampled per slot: readers count the calls they make to
+    the list, writers those they make to either representation, and a
+    check compares the counts with those of the check before.
+
+    Readers never wait: they call the representation published last.
+    Once a representation is replaced nobody writes to it any more, so
+    a reader which still finds it answers with what the set held when
+    it was replaced, which is while the reader ran. A representation
+    which was replaced is left to the garbage collector, with what the
+    list keeps per thread, and the next list is a new one.
+
+    Writers announce themselves in a counter of their slot before they
+    call the representation, and check that no migration started and
+    that it was not replaced in the meantime. The migrator first raises
+    migrating, which new writers wait on, then waits for every counter
+    to drop to zero, copies the keys, and publishes the other
+    representation. Either a writer sees migrating raised, or the
+    migrator sees its announcement. A thread always uses the same slot,
+    and the slots are a fixed array indexed by thread id, so the
+    announcements cost no memory per thread and nothing is left behind
+    when a thread dies. Every CHECK_PERIOD updates counted in its slot,
+    a writer which changed the set checks whether it crossed a
+    threshold; a set which stops changing right after it crossed one
+    stays as it is until it changes again.
+*/
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import test.Set;
+
+public class AdaptiveSet implements Set {
+
+    /* The size past which a set which is only read becomes a table */
+    public static final int GROW_READS = 64;
+
+    /* The size past which it does when half of the operations are updates */
+    public static final int GROW_UPDATES = 48;
+
+    /* The size below which it is a list again */
+    public static final int SHRINK = 16;
+
+    /* How many updates a slot counts between two checks of the size */
+    public static final int CHECK_PERIOD = 16;
+
+    /* Ints between two slots, so that each slot has a cache line of its own */
+    private static final int PAD = 16;
+
+    /* Offsets in a slot of its counters of writers inside, updates and list reads */
+    private static final int WRITERS = 0;
+    private static final int UPDATES = 1;
+    private static final int READS = 2;
+
+    /* A power of two, about twice the number of processors */
+    private static final int SLOTS =
+            Integer.highestOneBit(Math.min(64, 4 * Runtime.getRuntime().availableProcessors() - 1));
+
+    /* Fewer operations than this between two checks say nothing about the mix */
+    private static final int MIN_SAMPLE = 64;
+
+    /* Exactly one of the two is set */
+    private static final class State {
+        final SetList list;
+        final SplitOrderedSet table;
+
+        State(SetList list, SplitOrderedSet table) {
+            this.list = list;
+            this.table = table;
+        }
+    }
+
+    private volatile State state = new State(new SetList(), null);
+
+    /* Whether writers have to wait for the next representation */
+    private final AtomicBoolean migrating = new AtomicBoolean(false);
+
+    private final AtomicIntegerArray slots = new AtomicIntegerArray(SLOTS * PAD);
+
+    /* The counts summed over the slots at the last check, and the share of updates since */
+    private volatile int checkedReads = 0;
+    private volatile int checkedUpdates = 0;
+    private volatile int updatesPerMille = 0;
+
+    private static int slot() {
+        return ((int) Thread.currentThread().getId() & (SLOTS - 1)) * PAD;
+    }
+
+    /* Racing with another thread of the same slot only loses a count */
+    private void count(int index) {
+        slots.lazySet(index, slots.get(index) + 1);
+    }
+
+    public boolean add(int item) {
+        return update(true, item);
+    }
+
+    public boolean remove(int item) {
+        return update(false, item);
+    }
+
+    public boolean member(int item) {
+        State s = state;
+        if (s.list != null) {
+            count(slot() + READS);
+            return s.list.member(item);
+        }
+        return s.table.member(item);
+    }
+
+    private boolean update(boolean add, int item) {
+        int slot = slot();
+        boolean changed;
+        while (true) {
+            State s = state;
+            if (migrating.get()) {
+                Thread.yield();
+                continue;
+            }
+            slots.getAndIncrement(slot + WRITERS);
+            if (migrating.get() || state != s) {
+                slots.getAndDecrement(slot + WRITERS);
+                continue;
+            }
+            try {
+                if (s.list != null) {
+                    changed = add ? s.list.add(item) : s.list.remove(item);
+                } else {
+                    changed = add ? s.table.add(item) : s.table.remove(item);
+                }
+            } finally {
+                slots.getAndDecrement(slot + WRITERS);
+            }
+            break;
+        }
+
+        count(slot + UPDATES);
+        if (changed && slots.get(slot + UPDATES) % CHECK_PERIOD == 0) {
+            resize();
+        }
+        return changed;
+    }
+
+    /**
+     * The size past which the list becomes a table, for the mix of the
+     * operations since the last check.
+     */
+    private int growThreshold() {
+        int reads = 0;
+        int updates = 0;
+        for (int i = 0; i < SLOTS * PAD; i += PAD) {
+            reads += slots.get(i + READS);
+            updates += slots.get(i + UPDATES);
+        }
+        /* The counts may wrap around, their differences do not */
+        int newReads = reads - checkedReads;
+        int newUpdates = updates - checkedUpdates;
+        if (newReads + newUpdates >= MIN_SAMPLE) {
+            checkedReads = reads;
+            checkedUpdates = updates;
+            updatesPerMille = (int) (1000L * newUpdates / ((long) newReads + newUpdates));
+        }
+        int share = Math.min(updatesPerMille, 500);
+        return GROW_READS - (GROW_READS - GROW_UPDATES) * share / 500;
+    }
+
+    private boolean crossed(State s) {
+        if (s.list != null) {
+            return s.list.countInRange(Integer.MIN_VALUE, Integer.MAX_VALUE) > growThreshold();
+        }
+        return s.table.size() < SHRINK;
+    }
+
+    /* Migrates to the other representation if the size calls for it */
+    private void resize() {
+        State s = state;
+        if (migrating.get() || !crossed(s) || !migrating.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            /* Somebody else may have migrated since s was read */
+            if (state != s) {
+                return;
+            }
+            for (int i = 0; i < SLOTS * PAD; i += PAD) {
+                while (slots.get(i + WRITERS) != 0) {
+                    Thread.yield();
+                }
+            }
+            if (s.list != null) {
+                SplitOrderedSet table = new SplitOrderedSet();
+                for (int key : s.list.asList()) {
+                    table.add(key);
+                }
+                state = new State(null, table);
+            } else {
+                SetList list = new SetList();
+                list.addAll(keys(s.table));
+                state = new State(list, null);
+            }
+        } finally {
+            /* Should the copy fail, writers go on with the old representation */
+            migrating.set(false);
+        }
+    }
+
+    private static int[] keys(SplitOrderedSet table) {
+        List<Integer> keys = table.asList();
+        int[] items = new int[keys.size()];
+        for (int i = 0; i < items.length; i++) {
+            items[i] = keys.get(i);
+        }
+        return items;
+    }
+
+    /**
+     * Whether the set is currently a hash table rather than a list.
+     */
+    public boolean hashed() {
+        return state.list == null;
+    }
+
+    /**
+     * The number of keys.
+     */
+    public int size() {
+        State s = state;
+        if (s.list != null) {
+            return s.list.countInRange(Integer.MIN_VALUE, Integer.MAX_VALUE);
+        }
+        return s.table.size();
+    }
+
+    /**
+     * The function print has side-effects. Therefore
+     * it's impossible to write it in a transactional
+     * style.
+     */
+    public void print() {
+        State s = state;
+        if (s.list != null) {
+            s.list.print();
+        } else {
+            s.table.print();
+        }
+    }
+
+    /**
+     * This function is not thread-safe (which is not required).
+     */
+    public List<Integer> asList() {
+        State s = state;
+        return s.list != null ? s.list.asList() : s.table.asList();
+    }
+}
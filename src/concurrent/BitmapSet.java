@@ -0,0 +1,280 @@
+package concurrent;
+
+/*
+    Represent a set of integers from a bounded range [lo, hi) as a
+    bitmap, with operations to add, remove, check membership, and print.
+    Keys outside of the range are never members, and cannot be added.
+
+    By default the bitmap is dense: one bit per key of the range in an
+    AtomicLongArray, so a set takes (hi - lo) / 8 bytes whatever it
+    holds. add and remove set or clear their bit with a compareAndSet on
+    its word, and member is a single load.
+
+    The compressed mode follows Roaring bitmaps (Chambi, Lemire, Kaser
+    and Godin): the range is cut into containers of 2^16 keys, each of
+    which is null while empty, a sorted array of the low 16 bits of its
+    keys while it holds at most ARRAY_MAX of them, and a dense bitmap of
+    its own beyond that. Arrays are never modified in place: add and
+    remove compareAndSet a new copy over the container they copied, so a
+    reader sees a whole array or another. An array which grows past
+    ARRAY_MAX is replaced by a bitmap in the same way, but a bitmap which
+    empties stays a bitmap, as turning it back into an array could lose
+    the updates other threads make to it meanwhile.
+*/
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import test.Set;
+
+public class BitmapSet implements Set {
+
+    /* Keys per container, in compressed mode */
+    private static final int CONTAINER_BITS = 16;
+
+    /* The most keys an array container holds, beyond which a bitmap is smaller */
+    private static final int ARRAY_MAX = 4096;
+
+    private final int lo;
+    private final int hi;
+
+    /* The bitmap in dense mode, null in compressed mode */
+    private final AtomicLongArray words;
+
+    /* Each null, a char[] or an AtomicLongArray, in compressed mode */
+    private final AtomicReferenceArray<Object> containers;
+
+    public BitmapSet(int lo, int hi) {
+        this(lo, hi, false);
+    }
+
+    public BitmapSet(int lo, int hi, boolean compressed) {
+        if (hi <= lo) {
+            throw new IllegalArgumentException("Empty range [" + lo + ", " + hi + ")");
+        }
+        this.lo = lo;
+        this.hi = hi;
+        long range = (long) hi - lo;
+        if (compressed) {
+            words = null;
+            containers = new AtomicReferenceArray<Object>((int) ((range + (1 << CONTAINER_BITS) - 1) >>> CONTAINER_BITS));
+        } else {
+            words = new AtomicLongArray((int) ((range + 63) >>> 6));
+            containers = null;
+        }
+    }
+
+    private boolean inRange(int item) {
+        return item >= lo && item < hi;
+    }
+
+    public boolean add(int item) {
+        if (!inRange(item)) {
+            throw new IllegalArgumentException(item + " is out of [" + lo + ", " + hi + ")");
+        }
+        int offset = item - lo;
+        if (words != null) {
+            return set(words, offset);
+        }
+
+        int index = offset >>> CONTAINER_BITS;
+        char low = (char) offset;
+        while (true) {
+            Object container = containers.get(index);
+            if (container instanceof AtomicLongArray) {
+                return set((AtomicLongArray) container, low);
+            }
+            char[] keys = container == null ? new char[0] : (char[]) container;
+            int position = Arrays.binarySearch(keys, low);
+            if (position >= 0) {
+                return false;
+            }
+            position = ~position;
+            Object replacement;
+            if (keys.length < ARRAY_MAX) {
+                char[] larger = new char[keys.length + 1];
+                System.arraycopy(keys, 0, larger, 0, position);
+                larger[position] = low;
+                System.arraycopy(keys, position, larger, position + 1, keys.length - position);
+                replacement = larger;
+            } else {
+                AtomicLongArray bitmap = new AtomicLongArray(1 << (CONTAINER_BITS - 6));
+                for (char key : keys) {
+                    set(bitmap, key);
+                }
+                set(bitmap, low);
+                replacement = bitmap;
+            }
+            if (containers.compareAndSet(index, container, replacement)) {
+                return true;
+            }
+        }
+    }
+
+    public boolean remove(int item) {
+        if (!inRange(item)) {
+            return false;
+        }
+        int offset = item - lo;
+        if (words != null) {
+            return clear(words, offset);
+        }
+
+        int index = offset >>> CONTAINER_BITS;
+        char low = (char) offset;
+        while (true) {
+            Object container = containers.get(index);
+            if (container == null) {
+                return false;
+            }
+            if (container instanceof AtomicLongArray) {
+                return clear((AtomicLongArray) container, low);
+            }
+            char[] keys = (char[]) container;
+            int position = Arrays.binarySearch(keys, low);
+            if (position < 0) {
+                return false;
+            }
+            char[] smaller = null;
+            if (keys.length > 1) {
+                smaller = new char[keys.length - 1];
+                System.arraycopy(keys, 0, smaller, 0, position);
+                System.arraycopy(keys, position + 1, smaller, position, keys.length - position - 1);
+            }
+            if (containers.compareAndSet(index, container, smaller)) {
+                return true;
+            }
+        }
+    }
+
+    public boolean member(int item) {
+        if (!inRange(item)) {
+            return false;
+        }
+        int offset = item - lo;
+        if (words != null) {
+            return get(words, offset);
+        }
+
+        Object container = containers.get(offset >>> CONTAINER_BITS);
+        if (container == null) {
+            return false;
+        }
+        if (container instanceof AtomicLongArray) {
+            return get((AtomicLongArray) container, (char) offset);
+        }
+        return Arrays.binarySearch((char[]) container, (char) offset) >= 0;
+    }
+
+    private static boolean get(AtomicLongArray bitmap, int bit) {
+        return (bitmap.get(bit >>> 6) & 1L << bit) != 0;
+    }
+
+    /* Sets bit, and returns whether it was clear */
+    private static boolean set(AtomicLongArray bitmap, int bit) {
+        int index = bit >>> 6;
+        long mask = 1L << bit;
+        while (true) {
+            long word = bitmap.get(index);
+            if ((word & mask) != 0) {
+                return false;
+            }
+            if (bitmap.compareAndSet(index, word, word | mask)) {
+                return true;
+            }
+        }
+    }
+
+    /* Clears bit, and returns whether it was set */
+    private static boolean clear(AtomicLongArray bitmap, int bit) {
+        int index = bit >>> 6;
+        long mask = 1L << bit;
+        while (true) {
+            long word = bitmap.get(index);
+            if ((word & mask) == 0) {
+                return false;
+            }
+            if (bitmap.compareAndSet(index, word, word & ~mask)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * The number of keys, counted word by word. Under concurrent updates
+     * each word is counted as it was at some point during the call.
+     */
+    public int size() {
+        if (words != null) {
+            return count(words);
+        }
+        int size = 0;
+        for (int i = 0; i < containers.length(); i++) {
+            Object container = containers.get(i);
+            if (container instanceof AtomicLongArray) {
+                size += count((AtomicLongArray) container);
+            } else if (container != null) {
+                size += ((char[]) container).length;
+            }
+        }
+        return size;
+    }
+
+    private static int count(AtomicLongArray bitmap) {
+        int count = 0;
+        for (int i = 0; i < bitmap.length(); i++) {
+            count += Long.bitCount(bitmap.get(i));
+        }
+        return count;
+    }
+
+    /* Appends the keys of bitmap, whose first bit stands for base */
+    private static void addAll(List<Integer> l, AtomicLongArray bitmap, int base) {
+        for (int i = 0; i < bitmap.length(); i++) {
+            long word = bitmap.get(i);
+            while (word != 0) {
+                l.add(base + (i << 6) + Long.numberOfTrailingZeros(word));
+                word &= word - 1;
+            }
+        }
+    }
+
+    /**
+     * The function print has side-effects. Therefore
+     * it's impossible to write it in a transactional
+     * style.
+     */
+    public void print() {
+        for (int key : asList()) {
+            System.out.print(key + " ");
+        }
+        System.out.println("");
+    }
+
+    /**
+     * This function is not thread-safe (which is not required). It only
+     * looks at the set bits of each word, or at the arrays.
+     */
+    public List<Integer> asList() {
+        ArrayList<Integer> l = new ArrayList<Integer>();
+        if (words != null) {
+            addAll(l, words, lo);
+            return l;
+        }
+        for (int i = 0; i < containers.length(); i++) {
+            Object container = containers.get(i);
+            int base = lo + (i << CONTAINER_BITS);
+            if (container instanceof AtomicLongArray) {
+                addAll(l, (AtomicLongArray) container, base);
+            } else if (container != null) {
+                for (char key : (char[]) container) {
+                    l.add(base + key);
+                }
+            }
+        }
+        return l;
+    }
+}
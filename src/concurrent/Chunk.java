@@ -0,0 +1,29 @@
+package concurrent;
+/*
+    The node of an unrolled list: up to keys.length sorted integers
+    under a single versioned lock. Every key of a chunk is at least
+    low and smaller than the low of the next chunk; low never changes,
+    so it can be read without validation.
+*/
+
+public class Chunk extends VersionedLock {
+
+    public final int low;
+    public final int[] keys;
+    public int count = 0;
+    public Chunk next = null;
+
+    Chunk(int low, int capacity) {
+        this.low = low;
+        keys = new int[capacity];
+    }
+
+    /* The position of item, or where it would go with its bit flipped */
+    int indexOf(int item) {
+        int i = 0;
+        while (i < count && keys[i] < item) {
+            i++;
+        }
+        return i < count && keys[i] == item ? i : ~i;
+    }
+}
@@ -0,0 +1,19 @@
+package concurrent;
+
+/**
+ *  Decides what a thread does between an aborted transaction and its
+ *  next attempt. Restarting immediately is the fastest thing to do
+ *  when conflicts are rare, but under contention it makes threads
+ *  hammer the same versioned locks and the clock over and over.
+ *
+ *  Implementations are shared by all the threads using a set, so
+ *  they must keep any per-attempt state on the caller's side.
+ */
+public interface ContentionManager {
+
+    /**
+     * Called before restarting a transaction which already aborted
+     * aborts times (so aborts is at least 1).
+     */
+    void onAbort(int aborts);
+}
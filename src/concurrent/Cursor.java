@@ -0,0 +1,80 @@
+package concurrent;
+
+/**
+ *  A finger into a SetList: searches made through a cursor start from
+ *  the node its last operation stopped at, rather than from the head,
+ *  whenever that node is still in the list and before the key sought.
+ *  Callers who touch keys near the ones they touched last thus only
+ *  walk the distance between them.
+ *
+ *  The node is remembered with the value of its versioned lock. Any
+ *  write to the node changes that value, and unlinking it is a write,
+ *  so as long as the value is the same the node is still linked. Once
+ *  it changed the cursor falls back to the head.
+ *
+ *  A cursor carries its own transaction, so it must only be used by
+ *  one thread at a time. The operations of SetList itself go through
+ *  a cursor per thread.
+ */
+public final class Cursor {
+
+    private final SetList set;
+    final Transaction transaction;
+
+    private Node node = null;
+    private int versionedLock;
+
+    Cursor(SetList set, Transaction transaction) {
+        this.set = set;
+        this.transaction = transaction;
+    }
+
+    public boolean add(int item) {
+        return set.add(this, item);
+    }
+
+    public boolean remove(int item) {
+        return set.remove(this, item);
+    }
+
+    public boolean member(int item) {
+        return set.member(this, item);
+    }
+
+    /* Forgets the node, so that the next search starts from the head */
+    public void reset() {
+        node = null;
+    }
+
+    /**
+     * Where a search for item can start: the remembered node if it is
+     * unchanged and its key is smaller than item, head otherwise.
+     */
+    Node start(Node head, int item) {
+        Node start = this.node;
+        if (start == null || start.versionedLock() != this.versionedLock) {
+            return head;
+        }
+        /* The key of a recycled node changes, and recycling needs a removal */
+        int key = start.key;
+        if (key < item && start.versionedLock() == this.versionedLock) {
+            return start;
+        }
+        return head;
+    }
+
+    /**
+     * Remembers node, which was in the list at version bound: if its
+     * lock still shows a version no newer than that, nobody wrote it
+     * since, and its value can stand for "still linked".
+     */
+    void remember(Node node, int bound) {
+        int vl = node.versionedLock();
+        if (VL.isLocked(vl) || VL.getVersion(vl) > bound) {
+            this.node = null;
+            return;
+        }
+        this.node = node;
+        this.versionedLock = vl;
+    }
+}
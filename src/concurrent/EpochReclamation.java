@@ -0,0 +1,155 @@
+package concurrent;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ *  Epoch-based reclamation (Fraser, "Practical lock-freedom"): every
+ *  thread announces the global epoch when it enters an operation, and
+ *  the epoch only moves from e to e + 1 once every thread inside an
+ *  operation has announced e. A node retired while the epoch was e was
+ *  unlinked before anyone could announce e + 1, so once the epoch
+ *  reaches e + 2 no thread can still hold it and it goes back to the
+ *  pool of the thread which retired it.
+ *
+ *  Each thread keeps three limbo bags, one per epoch modulo 3, and a
+ *  pool of at most poolSize free nodes chained through their next
+ *  pointers; nodes beyond that are left to the garbage collector. A
+ *  thread which stops calling the set keeps its bags and pool.
+ */
+public final class EpochReclamation implements Reclamation {
+
+    private static final long IDLE = -1;
+
+    /* How many retirements a thread makes between attempts at advancing the epoch */
+    private static final int ADVANCE_PERIOD = 64;
+
+    private static final class Participant {
+        /* The epoch announced by this thread, or IDLE outside operations */
+        volatile long epoch = IDLE;
+
+        final Node[][] limbo = {new Node[16], new Node[16], new Node[16]};
+        final int[] limboCount = new int[3];
+        /* The epoch during which the nodes of each bag were retired */
+        final long[] limboEpoch = {IDLE, IDLE, IDLE};
+        int retired = 0;
+
+        Node pool = null;
+        int pooled = 0;
+    }
+
+    private final AtomicLong epoch = new AtomicLong();
+    private final Queue<Participant> participants = new ConcurrentLinkedQueue<Participant>();
+    private final int poolSize;
+
+    /* How many nodes were handed out of a pool rather than allocated */
+    private final LongAdder reused = new LongAdder();
+
+    private final ThreadLocal<Participant> local = new ThreadLocal<Participant>() {
+        @Override
+        protected Participant initialValue() {
+            Participant participant = new Participant();
+            participants.add(participant);
+            return participant;
+        }
+    };
+
+    public EpochReclamation() {
+        this(1024);
+    }
+
+    public EpochReclamation(int poolSize) {
+        this.poolSize = poolSize;
+    }
+
+    public long reusedNodes() {
+        return reused.sum();
+    }
+
+    public void enter() {
+        local.get().epoch = epoch.get();
+    }
+
+    public void exit() {
+        local.get().epoch = IDLE;
+    }
+
+    public Node allocate(int key) {
+        Participant self = local.get();
+        if (self.pool == null) {
+            long current = epoch.get();
+            for (int i = 0; i < 3; i++) {
+                if (self.limboEpoch[i] != IDLE && self.limboEpoch[i] <= current - 2) {
+                    recycle(self, i);
+                }
+            }
+            if (self.pool == null) {
+                return new Node(key);
+            }
+        }
+        Node node = self.pool;
+        self.pool = node.next;
+        self.pooled--;
+        node.key = key;
+        node.next = null;
+        reused.increment();
+        return node;
+    }
+
+    public void free(Node node) {
+        push(local.get(), node);
+    }
+
+    public void retire(Node node) {
+        Participant self = local.get();
+        long current = epoch.get();
+        int i = (int) (current % 3);
+        if (self.limboEpoch[i] != current) {
+            /* Whatever is in there dates from current - 3 at the latest */
+            recycle(self, i);
+            self.limboEpoch[i] = current;
+        }
+        if (self.limboCount[i] == self.limbo[i].length) {
+            Node[] larger = new Node[2 * self.limbo[i].length];
+            System.arraycopy(self.limbo[i], 0, larger, 0, self.limboCount[i]);
+            self.limbo[i] = larger;
+        }
+        self.limbo[i][self.limboCount[i]++] = node;
+        if (++self.retired == ADVANCE_PERIOD) {
+            self.retired = 0;
+            tryAdvance();
+        }
+    }
+
+    private void tryAdvance() {
+        long current = epoch.get();
+        for (Participant participant : participants) {
+            long announced = participant.epoch;
+            if (announced != IDLE && announced != current) {
+                return;
+            }
+        }
+        epoch.compareAndSet(current, current + 1);
+    }
+
+    /* Moves the nodes of bag i, which nobody can reach anymore, to the pool */
+    private void recycle(Participant self, int i) {
+        Node[] bag = self.limbo[i];
+        for (int j = 0; j < self.limboCount[i]; j++) {
+            push(self, bag[j]);
+            bag[j] = null;
+        }
+        self.limboCount[i] = 0;
+        self.limboEpoch[i] = IDLE;
+    }
+
+    private void push(Participant self, Node node) {
+        if (self.pooled < poolSize) {
+            node.next = self.pool;
+            self.pool = node;
+            self.pooled++;
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package concurrent;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ *  Spins for a random number of iterations, up to a limit that doubles
+ *  with every abort of the same operation (capped at maxSpins). The
+ *  randomness keeps the threads which aborted together from all coming
+ *  back at the same time.
+ */
+public final class ExponentialBackoff implements ContentionManager {
+    private final int minSpins;
+    private final int maxSpins;
+
+    public ExponentialBackoff(int minSpins, int maxSpins) {
+        if (minSpins < 0 || maxSpins < minSpins) {
+            throw new IllegalArgumentException("Invalid spins " + minSpins + " to " + maxSpins);
+        }
+        this.minSpins = minSpins;
+        this.maxSpins = maxSpins;
+    }
+
+    /**
+     * The most iterations onAbort(aborts) spins for: minSpins after the
+     * first abort, twice as many after each of the next ones, and never
+     * more than maxSpins.
+     */
+    public int limit(int aborts) {
+        int shift = Math.min(Math.max(aborts, 1) - 1, 30);
+        return (int) Math.min((long) minSpins << shift, maxSpins);
+    }
+
+    public void onAbort(int aborts) {
+        int spins = ThreadLocalRandom.current().nextInt(limit(aborts) + 1);
+        for (int i = 0; i < spins; i++) {
+            Thread.onSpinWait();
+        }
+    }
+}
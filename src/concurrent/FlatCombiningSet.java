@@ -0,0 +1,160 @@
+package concurrent;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import test.Set;
+
+/**
+ *  Flat combining (Hendler, Incze, Shavit and Tzafrir, "Flat combining
+ *  and the synchronization-parallelism tradeoff") over a sequential
+ *  SetList. Instead of taking the lock of the list, every thread posts
+ *  its operation in a record of its own and waits. Whichever thread
+ *  gets the combiner lock collects the operations of all the records,
+ *  sorts them by key and applies them in a single walk of the list
+ *  with sequential.SetList.applyAll, then hands the results back.
+ *
+ *  The records form a list which threads push themselves onto. Only
+ *  the combiner unlinks records, those which did not post anything for
+ *  MAX_AGE passes, and never the first one, which pushes compete for.
+ *  A thread whose record was unlinked pushes it again.
+ *
+ *  A thread waiting for its result yields after SPINS checks, so that
+ *  on a machine with fewer cores than threads the combiner gets to run.
+ */
+public final class FlatCombiningSet implements Set {
+
+    /* Passes a record may go without an operation before it is unlinked */
+    private static final int MAX_AGE = 64;
+
+    private static final int SPINS = 64;
+
+    private static final int NONE = -1;
+
+    private static final class Record {
+        /* The key, then the operation, posted by the thread; NONE once served */
+        int key;
+        volatile int operation = NONE;
+        boolean result;
+
+        /* The combining pass which last found an operation here */
+        long age;
+        volatile boolean linked = false;
+        Record next;
+    }
+
+    private final sequential.SetList list = new sequential.SetList();
+
+    private final AtomicBoolean combining = new AtomicBoolean(false);
+    private final AtomicReference<Record> records = new AtomicReference<Record>(null);
+
+    private final ThreadLocal<Record> local = new ThreadLocal<Record>() {
+        @Override
+        protected Record initialValue() {
+            return new Record();
+        }
+    };
+
+    /* Only used by the combiner */
+    private long pass = 0;
+    private long[] batch = new long[16];
+    private Record[] served = new Record[16];
+    private boolean[] results = new boolean[16];
+
+    public boolean add(int item) {
+        return execute(sequential.SetList.ADD, item);
+    }
+
+    public boolean remove(int item) {
+        return execute(sequential.SetList.REMOVE, item);
+    }
+
+    public boolean member(int item) {
+        return execute(sequential.SetList.MEMBER, item);
+    }
+
+    private boolean execute(int operation, int item) {
+        Record record = local.get();
+        record.key = item;
+        record.operation = operation;
+        if (!record.linked) {
+            push(record);
+        }
+
+        for (int spins = 0; ; spins++) {
+            if (!combining.get() && combining.compareAndSet(false, true)) {
+                try {
+                    combine();
+                } finally {
+                    combining.set(false);
+                }
+            }
+            if (record.operation == NONE) {
+                return record.result;
+            }
+            /* Unlinked while we were posting: the combiner missed it */
+            if (!record.linked) {
+                push(record);
+            }
+            if (spins >= SPINS) {
+                Thread.yield();
+            }
+        }
+    }
+
+    private void push(Record record) {
+        record.linked = true;
+        while (true) {
+            Record first = records.get();
+            record.next = first;
+            if (records.compareAndSet(first, record)) {
+                return;
+            }
+        }
+    }
+
+    private void combine() {
+        pass++;
+        int count = 0;
+        Record pred = null;
+        Record next;
+        for (Record record = records.get(); record != null; record = next) {
+            /* Read first, as an unlinked record may be pushed again at once */
+            next = record.next;
+            int operation = record.operation;
+            if (operation != NONE) {
+                if (count == batch.length) {
+                    batch = Arrays.copyOf(batch, 2 * count);
+                    served = Arrays.copyOf(served, 2 * count);
+                    results = new boolean[2 * count];
+                }
+                batch[count] = (long) record.key << 32 | count << 2 | operation;
+                served[count] = record;
+                count++;
+                record.age = pass;
+            } else if (pred != null && pass - record.age > MAX_AGE) {
+                /* Its thread sees linked turn false only once it is unlinked */
+                pred.next = next;
+                record.linked = false;
+                continue;
+            }
+            pred = record;
+        }
+        if (count == 0) {
+            return;
+        }
+
+        list.applyAll(batch, count, results);
+        for (int i = 0; i < count; i++) {
+            served[i].result = results[i];
+            served[i].operation = NONE;
+            served[i] = null;
+        }
+    }
+
+    public List<Integer> asList() {
+        return list.asList();
+    }
+}
@@ -0,0 +1,36 @@
+package concurrent;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ *  GV5 in the TL2 paper: commits never write the counter, they just
+ *  use its current value plus one as wv. The counter is only advanced
+ *  by transactions that abort because they read a version newer than
+ *  their rv, so that they do not keep aborting when they restart.
+ *
+ *  Writers no longer bounce the counter's cache line between them, at
+ *  the price of extra aborts for transactions reading freshly written
+ *  nodes. It never proves exclusivity either.
+ */
+public final class LazyClock implements VersionClock {
+    private final AtomicInteger version = new AtomicInteger(0);
+
+    public int read() {
+        return version.get();
+    }
+
+    public int tick(int rv) {
+        return version.get() + 1;
+    }
+
+    public boolean isExclusive(int rv, int wv) {
+        return false;
+    }
+
+    public void observe(int version) {
+        int current = this.version.get();
+        while (current < version && !this.version.compareAndSet(current, version)) {
+            current = this.version.get();
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package concurrent;
+
+/*
+    Represent a set of integers as a lazy list of ordered nodes (Heller,
+    Hendler, Herlihy, Luchangco, Moir, Scherer and Shavit) with
+    operations to add, remove, check membership, and print. At creation,
+    we have two sentinel nodes. Integers are supposed to be greater than
+    MIN_VALUE and smaller than MAX_VALUE.
+
+    add and remove search without locking, then lock the two nodes they
+    found and check that both are still unmarked and adjacent; if not,
+    they search again. remove marks the node before it unlinks it, and
+    the mark is its linearization point. member takes no lock and never
+    retries: it walks to the first key not smaller than its own and
+    only looks at the mark, which makes it wait-free.
+*/
+
+import java.util.ArrayList;
+import java.util.List;
+
+import test.Set;
+
+public class LazyList implements Set {
+
+    private final LazyNode head;
+
+    public LazyList() {
+        head = new LazyNode(Integer.MIN_VALUE, new LazyNode(Integer.MAX_VALUE, null));
+    }
+
+    /* Both are locked by the caller */
+    private static boolean validate(LazyNode pred, LazyNode curr) {
+        return !pred.marked && !curr.marked && pred.next == curr;
+    }
+
+    public boolean add(int item) {
+        while (true) {
+            LazyNode pred = head;
+            LazyNode curr = head.next;
+            while (curr.key < item) {
+                pred = curr;
+                curr = curr.next;
+            }
+
+            pred.lock();
+            try {
+                curr.lock();
+                try {
+                    if (validate(pred, curr)) {
+                        if (curr.key == item) {
+                            return false;
+                        }
+                        pred.next = new LazyNode(item, curr);
+                        return true;
+                    }
+                } finally {
+                    curr.unlock();
+                }
+            } finally {
+                pred.unlock();
+            }
+        }
+    }
+
+    public boolean remove(int item) {
+        while (true) {
+            LazyNode pred = head;
+            LazyNode curr = head.next;
+            while (curr.key < item) {
+                pred = curr;
+                curr = curr.next;
+            }
+
+            pred.lock();
+            try {
+                curr.lock();
+                try {
+                    if (validate(pred, curr)) {
+                        if (curr.key != item) {
+                            return false;
+                        }
+                        curr.marked = true;
+                        pred.next = curr.next;
+                        return true;
+                    }
+                } finally {
+                    curr.unlock();
+                }
+            } finally {
+                pred.unlock();
+            }
+        }
+    }
+
+    public boolean member(int item) {
+        LazyNode curr = head;
+        while (curr.key < item) {
+            curr = curr.next;
+        }
+        return curr.key == item && !curr.marked;
+    }
+
+    /**
+     * The function print has side-effects. Therefore
+     * it's impossible to write it in a transactional
+     * style.
+     */
+    public void print() {
+        for (LazyNode curr = head.next; curr.next != null; curr = curr.next) {
+            if (!curr.marked) {
+                System.out.print(curr.key + " ");
+            }
+        }
+        System.out.println("");
+    }
+
+    /**
+     * This function is not thread-safe (which is not required).
+     */
+    public List<Integer> asList() {
+        ArrayList<Integer> l = new ArrayList<Integer>();
+        for (LazyNode curr = head.next; curr.next != null; curr = curr.next) {
+            if (!curr.marked) {
+                l.add(curr.key);
+            }
+        }
+        return l;
+    }
+}
@@ -0,0 +1,40 @@
+package concurrent;
+/*
+    The node of a lazy list. The mark is set, under the lock of the
+    node, before the node is unlinked, so a node whose mark is clear
+    is in the list. The lock is a spin lock kept in the node itself,
+    so that a node is a single object.
+*/
+
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+public class LazyNode {
+
+    private static final AtomicIntegerFieldUpdater<LazyNode> LOCKED =
+        AtomicIntegerFieldUpdater.newUpdater(LazyNode.class, "locked");
+
+    /* Checks of the lock before a waiting thread yields */
+    private static final int SPINS = 64;
+
+    public final int key;
+    volatile LazyNode next;
+    volatile boolean marked = false;
+    private volatile int locked = 0;
+
+    LazyNode(int key, LazyNode next) {
+        this.key = key;
+        this.next = next;
+    }
+
+    void lock() {
+        for (int spins = 0; locked != 0 || !LOCKED.compareAndSet(this, 0, 1); spins++) {
+            if (spins >= SPINS) {
+                Thread.yield();
+            }
+        }
+    }
+
+    void unlock() {
+        locked = 0;
+    }
+}
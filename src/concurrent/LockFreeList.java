@@ -0,0 +1,171 @@
+package concurrent;
+
+/*
+    Represent a set of integers as a lock-free list of ordered nodes
+    (Harris and Michael) with operations to add, remove, check
+    membership, and print. At creation, we have two sentinel nodes.
+    Integers are supposed to be greater than MIN_VALUE and smaller
+    than MAX_VALUE.
+
+    A node is removed in two steps: first its next pointer is marked,
+    which is the linearization point of remove, then it is unlinked
+    from its predecessor. The second step may be done by any thread
+    walking past the node, so nobody ever waits for somebody else.
+*/
+
+import java.util.ArrayList;
+import java.util.List;
+
+import test.Set;
+
+public class LockFreeList implements Set {
+
+    private final LockFreeNode head;
+
+    public LockFreeList() {
+        head = new LockFreeNode(Integer.MIN_VALUE,
+                new LockFreeNode(Integer.MAX_VALUE, null));
+    }
+
+    /**
+     * The pair of adjacent nodes found by find: pred.key < key <= curr.key,
+     * and both were unmarked when they were seen.
+     */
+    static final class Window {
+        LockFreeNode pred;
+        LockFreeNode curr;
+    }
+
+    /*
+        The operations below work on any list segment starting at a
+        node that is never removed (a sentinel) and ending with a node
+        whose key is larger than every key searched for. This lets
+        SplitOrderedSet use its bucket sentinels as entry points.
+     */
+
+    /**
+     * Looks for key, unlinking the marked nodes met on the way.
+     * If a node cannot be unlinked because its predecessor changed
+     * under our feet, the search restarts from start.
+     */
+    static void find(LockFreeNode start, long key, Window window) {
+        boolean[] marked = {false};
+
+        retry:
+        while (true) {
+            LockFreeNode pred = start;
+            LockFreeNode curr = pred.next.getReference();
+            while (true) {
+                LockFreeNode succ = curr.next.get(marked);
+                while (marked[0]) {
+                    if (!pred.next.compareAndSet(curr, succ, false, false)) {
+                        continue retry;
+                    }
+                    curr = succ;
+                    succ = curr.next.get(marked);
+                }
+                if (curr.key >= key) {
+                    window.pred = pred;
+                    window.curr = curr;
+                    return;
+                }
+                pred = curr;
+                curr = succ;
+            }
+        }
+    }
+
+    /**
+     * Links node after start unless a node with the same key is
+     * already there. Returns the node holding the key afterwards,
+     * which is node itself if and only if it was inserted.
+     */
+    static LockFreeNode insert(LockFreeNode start, LockFreeNode node, Window window) {
+        while (true) {
+            find(start, node.key, window);
+            LockFreeNode pred = window.pred;
+            LockFreeNode curr = window.curr;
+            if (curr.key == node.key) {
+                return curr;
+            }
+            node.next.set(curr, false);
+            if (pred.next.compareAndSet(curr, node, false, false)) {
+                return node;
+            }
+        }
+    }
+
+    static boolean delete(LockFreeNode start, long key, Window window) {
+        while (true) {
+            find(start, key, window);
+            LockFreeNode pred = window.pred;
+            LockFreeNode curr = window.curr;
+            if (curr.key != key) {
+                return false;
+            }
+            LockFreeNode succ = curr.next.getReference();
+            if (!curr.next.compareAndSet(succ, succ, false, true)) {
+                /* Either somebody removed it first or succ changed */
+                continue;
+            }
+            /* Best effort: if this fails, the next find will unlink it */
+            pred.next.compareAndSet(curr, succ, false, false);
+            return true;
+        }
+    }
+
+    /**
+     * Wait-free: it never helps, it only skips over the marked nodes.
+     */
+    static boolean contains(LockFreeNode start, long key) {
+        LockFreeNode curr = start;
+        while (curr.key < key) {
+            curr = curr.next.getReference();
+        }
+        return curr.key == key && !curr.next.isMarked();
+    }
+
+    public boolean add(int item) {
+        LockFreeNode node = new LockFreeNode(item, null);
+        return insert(head, node, new Window()) == node;
+    }
+
+    public boolean remove(int item) {
+        return delete(head, item, new Window());
+    }
+
+    public boolean member(int item) {
+        return contains(head, item);
+    }
+
+    /**
+     * Same caveat as SetList.print: the list may change while
+     * it is being printed.
+     */
+    public void print() {
+        LockFreeNode curr = head.next.getReference();
+        while (curr.next.getReference() != null) {
+            if (!curr.next.isMarked()) {
+                System.out.print((int) curr.key + " ");
+            }
+            curr = curr.next.getReference();
+        }
+        System.out.println("");
+    }
+
+    /**
+     * This function is not thread-safe (which is not required).
+     */
+    public List<Integer> asList() {
+        ArrayList<Integer> l = new ArrayList<Integer>();
+
+        LockFreeNode curr = head.next.getReference();
+        while (curr.next.getReference() != null) {
+            if (!curr.next.isMarked()) {
+                l.add((int) curr.key);
+            }
+            curr = curr.next.getReference();
+        }
+        return l;
+    }
+}
@@ -0,0 +1,20 @@
+package concurrent;
+/*
+    The node of a lock-free list. The next pointer carries a mark
+    which is set when the node is logically deleted; once marked,
+    the pointer can no longer be changed, so nobody can insert a
+    node after a deleted one.
+*/
+
+import java.util.concurrent.atomic.AtomicMarkableReference;
+
+public class LockFreeNode {
+
+    public final long key;
+    public final AtomicMarkableReference<LockFreeNode> next;
+
+    LockFreeNode(long key, LockFreeNode succ) {
+        this.key = key;
+        next = new AtomicMarkableReference<LockFreeNode>(succ, false);
+    }
+}
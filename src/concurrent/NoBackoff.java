@@ -0,0 +1,9 @@
+package concurrent;
+
+/**
+ *  Restarts immediately, which is what SetList always did.
+ */
+public final class NoBackoff implements ContentionManager {
+    public void onAbort(int aborts) {
+    }
+}
@@ -0,0 +1,536 @@
+package concurrent;
+
+/*
+    Represent a set of integers as an ordered list whose nodes live
+    outside of the Java heap, with operations to add, remove, check
+    membership, and print. Integers are supposed to be greater than
+    MIN_VALUE and smaller than MAX_VALUE.
+
+    A node is three ints packed in a direct ByteBuffer: its versioned
+    lock, its key and the index of its successor. Indices replace
+    references, so the garbage collector never sees the nodes, and
+    the footprint is NODE_BYTES per node plus at most one segment of
+    slack. The memory is never given back: removed nodes go to a free
+    list and are reused by later adds.
+
+    Synchronisation is the TL2 scheme of SkipList. Every read of a node
+    is bracketed by two reads of its versioned lock, so a traversal
+    sees each node as it was at version rv or restarts. This is enough
+    for readers to go through a node which was reused: removing it
+    bumps its version past the rv of every transaction which could
+    still reach it, and reinserting it sets its version to that of the
+    insertion. So member takes no part in reclamation.
+
+    It is not enough for writers, as lock takes a node whatever its
+    version, and the transaction only finds out at validation. A
+    removed node therefore only goes to the free list after a grace
+    period, with the epochs of EpochReclamation: add and remove
+    announce the epoch they run in, and a node retired in epoch e is
+    only reused once the epoch reached e + 2, when no add or remove
+    which could have found it is left. Locks are also released with a
+    compare-and-set from the very word the thread installed, so that a
+    bug there shows up instead of wiping somebody else's lock.
+*/
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import test.Set;
+
+public class OffHeapSetList implements Set {
+
+    private static final VarHandle INT =
+        MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.nativeOrder());
+
+    /* Layout of a node */
+    private static final int LOCK = 0;
+    private static final int KEY = 4;
+    private static final int NEXT = 8;
+    static final int NODE_BYTES = 12;
+
+    /* Nodes are allocated by segments of 2^SEGMENT_BITS */
+    private static final int SEGMENT_BITS = 16;
+    private static final int SEGMENT_MASK = (1 << SEGMENT_BITS) - 1;
+    private static final int MAX_SEGMENTS = 1 << 12;
+
+    /* Index 0 stands for no node, so the sentinels come right after it */
+    private static final int NIL = 0;
+    private static final int HEAD = 1;
+    private static final int TAIL = 2;
+
+    /* What find returns when a read could not be validated */
+    private static final long ABORT = -1;
+    private static final long FOUND = 1L << 62;
+
+    /* An epoch announced outside of add and remove */
+    private static final long IDLE = -1;
+
+    /* How many retirements a thread makes between attempts at advancing the epoch */
+    private static final int ADVANCE_PERIOD = 64;
+
+    /* The announced epoch and the removed nodes of a thread, as in EpochReclamation */
+    private static final class Participant {
+        volatile long epoch = IDLE;
+
+        final int[][] limbo = {new int[16], new int[16], new int[16]};
+        final int[] limboCount = new int[3];
+        /* The epoch during which the nodes of each bag were retired */
+        final long[] limboEpoch = {IDLE, IDLE, IDLE};
+        int retired = 0;
+    }
+
+    /* As per TL2, we require the version of each set instance */
+    private final VersionClock version;
+
+    private final AtomicReferenceArray<ByteBuffer> segments =
+        new AtomicReferenceArray<ByteBuffer>(MAX_SEGMENTS);
+
+    /* The first index which was never handed out */
+    private final AtomicInteger bump = new AtomicInteger(TAIL + 1);
+
+    /* Index of the top of the free list, stamped against ABA in the high half */
+    private final AtomicLong free = new AtomicLong(NIL);
+
+    private final AtomicLong epoch = new AtomicLong();
+    private final Queue<Participant> participants = new ConcurrentLinkedQueue<Participant>();
+
+    private final ThreadLocal<Participant> local = new ThreadLocal<Participant>() {
+        @Override
+        protected Participant initialValue() {
+            Participant participant = new Participant();
+            participants.add(participant);
+            return participant;
+        }
+    };
+
+    public OffHeapSetList() {
+        this(new StrictClock());
+    }
+
+    public OffHeapSetList(VersionClock clock) {
+        version = clock;
+        segments.set(0, newSegment());
+        init(HEAD, Integer.MIN_VALUE, TAIL);
+        init(TAIL, Integer.MAX_VALUE, NIL);
+    }
+
+    private static ByteBuffer newSegment() {
+        return ByteBuffer.allocateDirect(NODE_BYTES << SEGMENT_BITS).order(ByteOrder.nativeOrder());
+    }
+
+    /**
+     * The number of nodes ever allocated, sentinels included. Nodes on
+     * the free list count, as they still take their place in memory.
+     */
+    public int allocatedNodes() {
+        return bump.get();
+    }
+
+    /**
+     * How many bytes of off-heap memory the set holds.
+     */
+    public long offHeapBytes() {
+        long bytes = 0;
+        for (int s = 0; s < MAX_SEGMENTS && segments.get(s) != null; s++) {
+            bytes += NODE_BYTES << SEGMENT_BITS;
+        }
+        return bytes;
+    }
+
+    private ByteBuffer segment(int node) {
+        return segments.get(node >>> SEGMENT_BITS);
+    }
+
+    private static int offset(int node, int field) {
+        return (node & SEGMENT_MASK) * NODE_BYTES + field;
+    }
+
+    private int lockWord(int node) {
+        return (int) INT.getVolatile(segment(node), offset(node, LOCK));
+    }
+
+    private int key(int node) {
+        return (int) INT.getAcquire(segment(node), offset(node, KEY));
+    }
+
+    private int next(int node) {
+        return (int) INT.getAcquire(segment(node), offset(node, NEXT));
+    }
+
+    private void setKey(int node, int key) {
+        INT.set(segment(node), offset(node, KEY), key);
+    }
+
+    private void setNext(int node, int next) {
+        INT.setRelease(segment(node), offset(node, NEXT), next);
+    }
+
+    private void init(int node, int key, int next) {
+        setKey(node, key);
+        setNext(node, next);
+        INT.setVolatile(segment(node), offset(node, LOCK), VL.make(false, 0));
+    }
+
+    /**
+     * Locks node if it is unlocked, and returns the word it stored in
+     * its lock, or 0 if it did not: a locked word never is 0.
+     */
+    private int lock(int node) {
+        int vl = lockWord(node);
+        if (VL.isLocked(vl)) {
+            return 0;
+        }
+        int locked = VL.setLocked(vl, true);
+        return INT.compareAndSet(segment(node), offset(node, LOCK), vl, locked) ? locked : 0;
+    }
+
+    /* Unlocks node, which this thread locked with the word locked */
+    private void unlock(int node, int locked) {
+        release(node, locked, VL.setLocked(locked, false));
+    }
+
+    /* Unlocks node, which this thread locked with the word locked, at version */
+    private void unlock(int node, int locked, int version) {
+        release(node, locked, VL.make(false, version));
+    }
+
+    private void release(int node, int locked, int vl) {
+        if (!INT.compareAndSet(segment(node), offset(node, LOCK), locked, vl)) {
+            throw new IllegalStateException("Lost the lock of node " + node);
+        }
+    }
+
+    /* Only for a node which nobody else can reach yet */
+    private void setVersion(int node, int version) {
+        INT.setVolatile(segment(node), offset(node, LOCK), VL.make(false, version));
+    }
+
+    private Participant enter() {
+        Participant self = local.get();
+        self.epoch = epoch.get();
+        return self;
+    }
+
+    private static void exit(Participant self) {
+        self.epoch = IDLE;
+    }
+
+    /**
+     * Pops a node off the free list, after moving there the nodes this
+     * thread retired which nobody can reach any more, or takes a fresh
+     * one.
+     */
+    private int allocate(Participant self, int key) {
+        int node = pop();
+        if (node == NIL) {
+            long current = epoch.get();
+            for (int i = 0; i < 3; i++) {
+                if (self.limboEpoch[i] != IDLE && self.limboEpoch[i] <= current - 2) {
+                    recycle(self, i);
+                }
+            }
+            node = pop();
+        }
+        if (node != NIL) {
+            setKey(node, key);
+            return node;
+        }
+
+        node = bump.getAndIncrement();
+        int s = node >>> SEGMENT_BITS;
+        if (s >= MAX_SEGMENTS) {
+            throw new IllegalStateException("OffHeapSetList is full");
+        }
+        if (segments.get(s) == null) {
+            segments.compareAndSet(s, null, newSegment());
+        }
+        setKey(node, key);
+        return node;
+    }
+
+    private int pop() {
+        while (true) {
+            long top = free.get();
+            int node = (int) top;
+            if (node == NIL) {
+                return NIL;
+            }
+            /* If node was popped meanwhile, the stamp has changed too */
+            long popped = ((top >>> 32) + 1) << 32 | next(node);
+            if (free.compareAndSet(top, popped)) {
+                return node;
+            }
+        }
+    }
+
+    /**
+     * Pushes node on the free list. Its next index becomes the link of
+     * the free list, which concurrent readers notice through its lock.
+     */
+    private void push(int node) {
+        while (true) {
+            long top = free.get();
+            setNext(node, (int) top);
+            long pushed = ((top >>> 32) + 1) << 32 | node;
+            if (free.compareAndSet(top, pushed)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Puts node, which a committed remove unlinked, aside until no add
+     * or remove which could have found it is left.
+     */
+    private void retire(Participant self, int node) {
+        long current = epoch.get();
+        int i = (int) (current % 3);
+        if (self.limboEpoch[i] != current) {
+            /* Whatever is in there dates from current - 3 at the latest */
+            recycle(self, i);
+            self.limboEpoch[i] = current;
+        }
+        if (self.limboCount[i] == self.limbo[i].length) {
+            int[] larger = new int[2 * self.limbo[i].length];
+            System.arraycopy(self.limbo[i], 0, larger, 0, self.limboCount[i]);
+            self.limbo[i] = larger;
+        }
+        self.limbo[i][self.limboCount[i]++] = node;
+        if (++self.retired == ADVANCE_PERIOD) {
+            self.retired = 0;
+            tryAdvance();
+        }
+    }
+
+    private void tryAdvance() {
+        long current = epoch.get();
+        for (Participant participant : participants) {
+            long announced = participant.epoch;
+            if (announced != IDLE && announced != current) {
+                return;
+            }
+        }
+        epoch.compareAndSet(current, current + 1);
+    }
+
+    /* Moves the nodes of bag i, which nobody can reach anymore, to the free list */
+    private void recycle(Participant self, int i) {
+        int[] bag = self.limbo[i];
+        for (int j = 0; j < self.limboCount[i]; j++) {
+            push(bag[j]);
+        }
+        self.limboCount[i] = 0;
+        self.limboEpoch[i] = IDLE;
+    }
+
+    /**
+     * A node can be read if it is unlocked and not newer than rv.
+     */
+    private boolean readable(int vl, int rv) {
+        if (VL.getVersion(vl) > rv) {
+            this.version.observe(VL.getVersion(vl));
+            return false;
+        }
+        return !VL.isLocked(vl);
+    }
+
+    /**
+     * Walks to the last node whose key is smaller than item. Returns
+     * ABORT if one of the reads could not be validated against rv, and
+     * otherwise that node and its successor packed with window, plus
+     * FOUND if the successor holds item. Nothing is allocated, so that
+     * member does not produce any garbage either.
+     */
+    private long find(int item, int rv) {
+        int pred = NIL;
+        int curr = HEAD;
+        while (true) {
+            ByteBuffer segment = segment(curr);
+            int offset = offset(curr, 0);
+            int vl = (int) INT.getVolatile(segment, offset + LOCK);
+            if (!readable(vl, rv)) {
+                return ABORT;
+            }
+            int key = segment.getInt(offset + KEY);
+            int next = segment.getInt(offset + NEXT);
+            /* Keeps the two reads above from moving past the second read of the lock */
+            VarHandle.acquireFence();
+            if ((int) INT.getVolatile(segment, offset + LOCK) != vl) {
+                return ABORT;
+            }
+            if (key >= item) {
+                return window(pred, curr) | (key == item ? FOUND : 0);
+            }
+            pred = curr;
+            curr = next;
+        }
+    }
+
+    private static long window(int pred, int curr) {
+        return (long) pred << 32 | curr;
+    }
+
+    private static int pred(long window) {
+        return (int) (window >>> 32) & ~(int) (FOUND >>> 32);
+    }
+
+    private static int curr(long window) {
+        return (int) window;
+    }
+
+    private static boolean found(long window) {
+        return (window & FOUND) != 0;
+    }
+
+    public boolean add(int item) {
+        Participant self = enter();
+        try {
+            return add(self, item);
+        } finally {
+            exit(self);
+        }
+    }
+
+    private boolean add(Participant self, int item) {
+        int node = NIL;
+
+        transaction:
+        while (true) {
+            int rv = this.version.read();
+            long window = find(item, rv);
+            if (window == ABORT) {
+                continue transaction;
+            }
+            if (found(window)) {
+                /* Nobody saw it, so it needs no grace period */
+                if (node != NIL) {
+                    push(node);
+                }
+                return false;
+            }
+
+            /* Nobody saw the node of an aborted attempt, so it is reused */
+            if (node == NIL) {
+                node = allocate(self, item);
+            }
+            int pred = pred(window);
+            setNext(node, curr(window));
+
+            int locked = lock(pred);
+            if (locked == 0) {
+                continue transaction;
+            }
+            int wv = this.version.tick(rv);
+            if (!this.version.isExclusive(rv, wv)) {
+                if (VL.getVersion(locked) > rv) {
+                    unlock(pred, locked);
+                    continue transaction;
+                }
+            }
+
+            setVersion(node, wv);
+            setNext(pred, node);
+            unlock(pred, locked, wv);
+            return true;
+        }
+    }
+
+    public boolean remove(int item) {
+        Participant self = enter();
+        try {
+            return remove(self, item);
+        } finally {
+            exit(self);
+        }
+    }
+
+    private boolean remove(Participant self, int item) {
+        transaction:
+        while (true) {
+            int rv = this.version.read();
+            long window = find(item, rv);
+            if (window == ABORT) {
+                continue transaction;
+            }
+            if (!found(window)) {
+                return false;
+            }
+
+            int pred = pred(window);
+            int victim = curr(window);
+            int predLocked = lock(pred);
+            if (predLocked == 0) {
+                continue transaction;
+            }
+            int victimLocked = lock(victim);
+            if (victimLocked == 0) {
+                unlock(pred, predLocked);
+                continue transaction;
+            }
+            int wv = this.version.tick(rv);
+            if (!this.version.isExclusive(rv, wv)) {
+                if (VL.getVersion(predLocked) > rv || VL.getVersion(victimLocked) > rv) {
+                    unlock(victim, victimLocked);
+                    unlock(pred, predLocked);
+                    continue transaction;
+                }
+            }
+
+            /* Both are locked and unchanged since rv, so this is the successor find saw */
+            setNext(pred, next(victim));
+            unlock(victim, victimLocked, wv);
+            unlock(pred, predLocked, wv);
+            retire(self, victim);
+            return true;
+        }
+    }
+
+    /**
+     * Unlike the other lists, member has to validate its reads: the
+     * index it follows may belong to a node which was freed and reused.
+     */
+    public boolean member(int item) {
+        while (true) {
+            long window = find(item, this.version.read());
+            if (window != ABORT) {
+                return found(window);
+            }
+        }
+    }
+
+    /**
+     * The function print has side-effects. Therefore
+     * it's impossible to write it in a transactional
+     * style.
+     */
+    public void print() {
+        int curr = next(HEAD);
+        while (curr != TAIL) {
+            System.out.print(key(curr) + " ");
+            curr = next(curr);
+        }
+        System.out.println("");
+    }
+
+    /**
+     * This function is not thread-safe (which is not required).
+     */
+    public List<Integer> asList() {
+        ArrayList<Integer> l = new ArrayList<Integer>();
+        int curr = next(HEAD);
+        while (curr != TAIL) {
+            l.add(key(curr));
+            curr = next(curr);
+        }
+        return l;
+    }
+}
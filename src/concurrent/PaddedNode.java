@@ -0,0 +1,16 @@
+package concurrent;
+/*
+    A node followed by a cache line of padding, for the sentinels that
+    every transaction reads: a write to whatever the allocator places
+    right after the head would otherwise invalidate the line holding its
+    versioned lock in every core.
+*/
+
+class PaddedNode extends Node {
+
+    long p1, p2, p3, p4, p5, p6, p7, p8;
+
+    PaddedNode(int item) {
+        super(item);
+    }
+}
@@ -0,0 +1,30 @@
+package concurrent;
+
+/**
+ *  Decides where the nodes of a SetList come from and what becomes of
+ *  them once they are unlinked. A removed node cannot simply be reused:
+ *  a thread which read the link to it before the removal may still be
+ *  walking through it, so it must be kept aside until no such thread
+ *  can remain.
+ *
+ *  Every operation on the set runs between enter and exit. Like the
+ *  other strategies, implementations are shared by all the threads
+ *  using a set.
+ */
+public interface Reclamation {
+
+    /* Called before the calling thread reads any node of the set */
+    void enter();
+
+    /* Called once the calling thread holds no more references to nodes */
+    void exit();
+
+    /* Returns a node holding key whose next pointer is null */
+    Node allocate(int key);
+
+    /* Gives back a node which was allocated but never made visible */
+    void free(Node node);
+
+    /* Gives back a node which was unlinked by a committed transaction */
+    void retire(Node node);
+}
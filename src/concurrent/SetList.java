@@ -8,197 +8,725 @@ package concurrent;
 */
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.PrimitiveIterator;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+import java.util.stream.StreamSupport;
 
-import test.Set;
+import test.BulkSet;
 
-public class SetList implements Set {
+public class SetList implements BulkSet {
+
+    /* How many keys asList reads per transaction */
+    private static final int LIST_CHUNK = 256;
 
     /* As per TL2, we require the version of each SetList instance */
-    private final AtomicInteger version = new AtomicInteger(0);
+    private final VersionClock version;
+
+    /* Consulted every time a transaction has to be restarted */
+    private final ContentionManager contention;
+
+    /* Where nodes come from, and where removed ones go */
+    private final Reclamation reclamation;
+
+    /* Commits, aborts by reason and traversal lengths of this set */
+    private final TxStats stats = new TxStats();
+
+    /*
+        The cursor, and so the transaction, of each thread on this set.
+        Unlike those of cursor(), they have no set of their own, as the
+        operations below pass them along: the map of a thread holds them
+        strongly, and a set they pointed to would live as long as every
+        thread which ever used it.
+     */
+    private final ThreadLocal<Cursor> cursors = new ThreadLocal<Cursor>() {
+        @Override
+        protected Cursor initialValue() {
+            return new Cursor(null, new Transaction(version, stats));
+        }
+    };
 
     private final Node head;
 
     public SetList() {
-        head = new Node(Integer.MIN_VALUE);
-        head.next = new Node(Integer.MAX_VALUE);
+        this(new StrictClock());
     }
 
-    public boolean add(int item) {
+    public SetList(VersionClock clock) {
+        this(clock, new NoBackoff());
+    }
 
-        /*
-            We wrap the transaction in a while(true) so
-            we can restart it with continue
-         */
-        transaction:
-        while (true) {
-            int rv = this.version.get();
-            int vl, vl1;
-            Node readSet;
+    public SetList(VersionClock clock, ContentionManager contention) {
+        this(clock, contention, new GarbageCollection());
+    }
 
-            Node pred = head;
+    public SetList(VersionClock clock, ContentionManager contention, Reclamation reclamation) {
+        version = clock;
+        this.contention = contention;
+        this.reclamation = reclamation;
+        head = new PaddedNode(Integer.MIN_VALUE);
+        head.next = new Node(Integer.MAX_VALUE);
+    }
 
-            vl = head.versionedLock.get();
-            if (VL.getVersion(vl) > rv || VL.isLocked(vl)) {
-                continue transaction;
-            }
-            Node curr = head.next;
-            vl1 = head.versionedLock.get();
-            if (vl1 != vl) {
-                continue transaction;
+    public TxStats stats() {
+        return stats;
+    }
+
+    /**
+     * Returns a new cursor on this set, for the calling thread only.
+     */
+    public Cursor cursor() {
+        return new Cursor(this, new Transaction(version, stats));
+    }
+
+    /**
+     * Walks from start, whose key must be smaller than item, to the
+     * last node whose key is smaller than item. Returns null if one
+     * of the reads could not be validated.
+     */
+    private static Node findPred(Transaction tx, Node start, int item) {
+        Node pred = start;
+        Node curr = tx.next(pred);
+        if (curr == null) {
+            return null;
+        }
+        while (curr.key < item) {
+            pred = curr;
+            curr = tx.next(pred);
+            if (curr == null) {
+                return null;
             }
+        }
+        return pred;
+    }
+
+    /**
+     * Begins a transaction which already aborted aborts times. Every
+     * operation starts each of its attempts here, so that they all back
+     * off and begin (and so account for their aborts) in the same way.
+     */
+    private void attempt(Transaction tx, int aborts, boolean readOnly) {
+        if (aborts > 0) {
+            this.contention.onAbort(aborts);
+        }
+        if (readOnly) {
+            tx.beginReadOnly();
+        } else {
+            tx.begin();
+        }
+    }
+
+    public boolean add(int item) {
+        return add(this.cursors.get(), item);
+    }
 
-            readSet = head;
+    boolean add(Cursor cursor, int item) {
+        this.reclamation.enter();
+        try {
+            Transaction tx = cursor.transaction;
+            Node node = null;
 
-            while (curr.key < item) {
-                pred = curr;
+            /*
+                We wrap the transaction in an endless loop so
+                we can restart it with continue
+             */
+            transaction:
+            for (int aborts = 0; ; aborts++) {
+                attempt(tx, aborts, false);
 
-                vl = pred.versionedLock.get();
-                if (VL.getVersion(vl) > rv || VL.isLocked(vl)) {
+                Node pred = findPred(tx, cursor.start(head, item), item);
+                if (pred == null) {
                     continue transaction;
                 }
-
-                curr = pred.next;
-                vl1 = pred.versionedLock.get();
-                if (vl1 != vl) {
+                Node curr = tx.next(pred);
+                if (curr == null) {
                     continue transaction;
                 }
-                readSet = pred;
-            }
-            if (curr.key == item) {
-                return false;
-            } else {
-                Node node = new Node(item);
+                if (curr.key == item) {
+                    if (node != null) {
+                        this.reclamation.free(node);
+                    }
+                    cursor.remember(pred, tx.readVersion());
+                    return false;
+                }
+
+                /* Nobody saw the node of an aborted attempt, so it is reused */
+                if (node == null) {
+                    node = this.reclamation.allocate(item);
+                }
                 node.next = curr;
+                tx.read(pred);
+                tx.write(pred, node);
+                if (tx.commit()) {
+                    /* Nobody else can have written node before wv */
+                    cursor.remember(node, tx.writeVersion());
+                    return true;
+                }
+            }
+        } finally {
+            this.reclamation.exit();
+        }
+    }
 
-                if (!pred.lock()) {
+    public boolean remove(int item) {
+        return remove(this.cursors.get(), item);
+    }
+
+    boolean remove(Cursor cursor, int item) {
+        this.reclamation.enter();
+        try {
+            Transaction tx = cursor.transaction;
+
+            transaction:
+            for (int aborts = 0; ; aborts++) {
+                attempt(tx, aborts, false);
+
+                Node pred = findPred(tx, cursor.start(head, item), item);
+                if (pred == null) {
+                    continue transaction;
+                }
+                Node curr = tx.next(pred);
+                if (curr == null) {
+                    continue transaction;
+                }
+                if (curr.key != item) {
+                    cursor.remember(pred, tx.readVersion());
+                    return false;
+                }
+                Node succ = tx.next(curr);
+                if (succ == null) {
                     continue transaction;
                 }
 
-                int wv = this.version.incrementAndGet();
-                if (rv + 1 != wv) {
-                    vl = readSet.versionedLock.get();
-                    if ((readSet != pred && VL.isLocked(vl)) || VL.getVersion(vl) > rv) {
-                        pred.unlock();
+                tx.read(pred);
+                tx.read(curr);
+                tx.write(pred, succ);
+                /* Invalidates curr, so that nobody links a node after it */
+                tx.write(curr, succ);
+                if (tx.commit()) {
+                    cursor.remember(pred, tx.writeVersion());
+                    this.reclamation.retire(curr);
+                    return true;
+                }
+            }
+        } finally {
+            this.reclamation.exit();
+        }
+    }
+
+    /**
+     * Adds all the given integers in a single transaction: either all
+     * of the missing ones become visible at once, or none of them.
+     * The keys are handled in ascending order, so the list is only
+     * walked once. Returns the number of integers actually added.
+     */
+    public int addAll(int... items) {
+        this.reclamation.enter();
+        try {
+            int[] keys = items.clone();
+            Arrays.sort(keys);
+            Cursor cursor = this.cursors.get();
+            Transaction tx = cursor.transaction;
+            Node[] nodes = new Node[keys.length];
+
+            transaction:
+            for (int aborts = 0; ; aborts++) {
+                attempt(tx, aborts, false);
+
+                int added = 0;
+                Node pred = keys.length > 0 ? cursor.start(head, keys[0]) : head;
+                for (int i = 0; i < keys.length; i++) {
+                    if (i > 0 && keys[i] == keys[i - 1]) {
+                        continue;
+                    }
+                    pred = findPred(tx, pred, keys[i]);
+                    if (pred == null) {
                         continue transaction;
                     }
+                    Node curr = tx.next(pred);
+                    if (curr == null) {
+                        continue transaction;
+                    }
+                    if (curr.key == keys[i]) {
+                        if (nodes[i] != null) {
+                            this.reclamation.free(nodes[i]);
+                            nodes[i] = null;
+                        }
+                        continue;
+                    }
+
+                    if (nodes[i] == null) {
+                        nodes[i] = this.reclamation.allocate(keys[i]);
+                    }
+                    nodes[i].next = curr;
+                    tx.read(pred);
+                    tx.write(pred, nodes[i]);
+                    /* The next keys are larger, so we can go on from here */
+                    pred = nodes[i];
+                    added++;
+                }
+                if (tx.commit()) {
+                    return added;
                 }
-                pred.next = node;
-                pred.updateToVersion(wv);
-                pred.unlock();
-                return true;
             }
+        } finally {
+            this.reclamation.exit();
         }
     }
 
-    public boolean remove(int item) {
-        transaction:
-        while (true) {
-            int rv = this.version.get();
-            int vl, vl1;
-            Node readSet;
+    /**
+     * Removes all the given integers in a single transaction.
+     * Returns the number of integers actually removed.
+     */
+    public int removeAll(int... items) {
+        this.reclamation.enter();
+        try {
+            int[] keys = items.clone();
+            Arrays.sort(keys);
+            Cursor cursor = this.cursors.get();
+            Transaction tx = cursor.transaction;
+            Node[] victims = new Node[keys.length];
 
-            Node pred = head;
+            transaction:
+            for (int aborts = 0; ; aborts++) {
+                attempt(tx, aborts, false);
+
+                int removed = 0;
+                Node pred = keys.length > 0 ? cursor.start(head, keys[0]) : head;
+                for (int i = 0; i < keys.length; i++) {
+                    if (i > 0 && keys[i] == keys[i - 1]) {
+                        continue;
+                    }
+                    pred = findPred(tx, pred, keys[i]);
+                    if (pred == null) {
+                        continue transaction;
+                    }
+                    Node curr = tx.next(pred);
+                    if (curr == null) {
+                        continue transaction;
+                    }
+                    if (curr.key != keys[i]) {
+                        continue;
+                    }
+                    Node succ = tx.next(curr);
+                    if (succ == null) {
+                        continue transaction;
+                    }
 
-            vl = head.versionedLock.get();
-            if (VL.getVersion(vl) > rv || VL.isLocked(vl)) {
-                continue transaction;
+                    tx.read(pred);
+                    tx.read(curr);
+                    tx.write(pred, succ);
+                    tx.write(curr, succ);
+                    victims[removed++] = curr;
+                }
+                if (tx.commit()) {
+                    for (int i = 0; i < removed; i++) {
+                        this.reclamation.retire(victims[i]);
+                    }
+                    return removed;
+                }
             }
-            Node curr = head.next;
-            vl1 = head.versionedLock.get();
-            if (vl1 != vl) {
-                continue transaction;
+        } finally {
+            this.reclamation.exit();
+        }
+    }
+
+    /**
+     * Tells which of the given integers are in the set, all at the same
+     * version: they are looked up in ascending order in a single
+     * read-only transaction, so the list is only walked once.
+     */
+    public boolean[] containsAll(int... items) {
+        /* Sorted by key, each with its position in items in the low half */
+        long[] keys = new long[items.length];
+        for (int i = 0; i < items.length; i++) {
+            keys[i] = (long) items[i] << 32 | i;
+        }
+        Arrays.sort(keys);
+        boolean[] result = new boolean[items.length];
+
+        this.reclamation.enter();
+        try {
+            Cursor cursor = this.cursors.get();
+            Transaction tx = cursor.transaction;
+
+            transaction:
+            for (int aborts = 0; ; aborts++) {
+                attempt(tx, aborts, true);
+
+                Node pred = keys.length > 0 ? cursor.start(head, (int) (keys[0] >> 32)) : head;
+                for (long key : keys) {
+                    int item = (int) (key >> 32);
+                    pred = findPred(tx, pred, item);
+                    if (pred == null) {
+                        continue transaction;
+                    }
+                    Node curr = tx.next(pred);
+                    if (curr == null) {
+                        continue transaction;
+                    }
+                    result[(int) key] = curr.key == item;
+                }
+                if (tx.commit()) {
+                    cursor.remember(pred, tx.readVersion());
+                    return result;
+                }
             }
-            readSet = head;
+        } finally {
+            this.reclamation.exit();
+        }
+    }
 
-            while (curr.key < item) {
-                pred = curr;
+    /*
+        The range operations are read-only transactions (see Transaction):
+        every next pointer they follow is validated against rv, so what
+        they see is the set as it was at rv, and they commit without
+        locking anything.
+        A writer inside the range restarts them, so a long range may
+        take several attempts while writers keep running, and with
+        NoBackoff nothing bounds how many: on a large list under steady
+        writers, a range over the whole of it can starve. asList reads
+        the list LIST_CHUNK keys per transaction instead.
+     */
 
-                vl = pred.versionedLock.get();
-                if (VL.getVersion(vl) > rv || VL.isLocked(vl)) {
+    /**
+     * Calls action on every key from lo inclusive to hi exclusive, in
+     * ascending order. The keys are those of a single version of the
+     * set: they are collected first and only handed to action once the
+     * transaction committed, so action never sees a key of an attempt
+     * that had to be restarted, and may use the set itself.
+     */
+    public void forEachInRange(int lo, int hi, IntConsumer action) {
+        for (int key : range(lo, hi, Integer.MAX_VALUE)) {
+            action.accept(key);
+        }
+    }
+
+    /**
+     * The first keys, at most limit of them, from lo inclusive to hi
+     * exclusive, at a single version of the set.
+     */
+    private int[] range(int lo, int hi, int limit) {
+        int[] keys = new int[16];
+        int count = 0;
+
+        this.reclamation.enter();
+        try {
+            Cursor cursor = this.cursors.get();
+            Transaction tx = cursor.transaction;
+
+            transaction:
+            for (int aborts = 0; ; aborts++) {
+                attempt(tx, aborts, true);
+                count = 0;
+
+                Node pred = findPred(tx, cursor.start(head, lo), lo);
+                if (pred == null) {
                     continue transaction;
                 }
-                curr = pred.next;
-                vl1 = pred.versionedLock.get();
-                if (vl1 != vl) {
+                Node curr = tx.next(pred);
+                if (curr == null) {
                     continue transaction;
                 }
+                while (curr.key < hi && count < limit) {
+                    if (count == keys.length) {
+                        keys = Arrays.copyOf(keys, 2 * count);
+                    }
+                    keys[count++] = curr.key;
+                    pred = curr;
+                    curr = tx.next(pred);
+                    if (curr == null) {
+                        continue transaction;
+                    }
+                }
+                if (tx.commit()) {
+                    cursor.remember(pred, tx.readVersion());
+                    break transaction;
+                }
+            }
+        } finally {
+            this.reclamation.exit();
+        }
+        return Arrays.copyOf(keys, count);
+    }
+
+    /**
+     * The number of keys from lo inclusive to hi exclusive, at a single
+     * version of the set.
+     */
+    public int countInRange(int lo, int hi) {
+        this.reclamation.enter();
+        try {
+            Cursor cursor = this.cursors.get();
+            Transaction tx = cursor.transaction;
 
-                readSet = pred;
+            transaction:
+            for (int aborts = 0; ; aborts++) {
+                attempt(tx, aborts, true);
+
+                Node pred = findPred(tx, cursor.start(head, lo), lo);
+                if (pred == null) {
+                    continue transaction;
+                }
+                Node curr = tx.next(pred);
+                if (curr == null) {
+                    continue transaction;
+                }
+                int count = 0;
+                while (curr.key < hi) {
+                    count++;
+                    pred = curr;
+                    curr = tx.next(pred);
+                    if (curr == null) {
+                        continue transaction;
+                    }
+                }
+                if (tx.commit()) {
+                    cursor.remember(pred, tx.readVersion());
+                    return count;
+                }
             }
-            if (curr.key == item) {
-                if (!pred.lock()) continue transaction;
-                if (!curr.lock()) {
-                    pred.unlock();
+        } finally {
+            this.reclamation.exit();
+        }
+    }
+
+    /**
+     * The smallest key larger than item, or MAX_VALUE if there is none.
+     */
+    public int firstAfter(int item) {
+        if (item >= Integer.MAX_VALUE - 1) {
+            return Integer.MAX_VALUE;
+        }
+        this.reclamation.enter();
+        try {
+            Cursor cursor = this.cursors.get();
+            Transaction tx = cursor.transaction;
+
+            transaction:
+            for (int aborts = 0; ; aborts++) {
+                attempt(tx, aborts, true);
+
+                Node pred = findPred(tx, cursor.start(head, item + 1), item + 1);
+                if (pred == null) {
                     continue transaction;
                 }
+                Node curr = tx.next(pred);
+                if (curr == null) {
+                    continue transaction;
+                }
+                if (tx.commit()) {
+                    cursor.remember(pred, tx.readVersion());
+                    return curr.key;
+                }
+            }
+        } finally {
+            this.reclamation.exit();
+        }
+    }
 
-                int wv = this.version.incrementAndGet();
-                if (rv + 1 != wv) {
-                    vl = readSet.versionedLock.get();
-                    if ((readSet != pred && readSet != curr && VL.isLocked(vl))
-                            || VL.getVersion(vl) > rv) {
-                        curr.unlock();
-                        pred.unlock();
-                        continue transaction;
+    /*
+        Unlike the range operations, the iterators and streams below do
+        not buffer anything: they hand out keys as they read them. Those
+        of spliterator, iterator, stream and parallelStream are the keys
+        of a single version of the set. If a writer changes a node they
+        have yet to read, they move to a newer version when what they
+        handed out is still part of it, and otherwise throw
+        ConcurrentModificationException; a parallel stream can only move
+        before it is split. Those of the weak variants never fail that
+        way, but may mix versions (see SetListSpliterator).
+     */
+
+    /**
+     * A spliterator over the keys of a single version of the set,
+     * starting at the version of its creation (see SetListSpliterator).
+     * It can be used by any thread.
+     */
+    public Spliterator.OfInt spliterator() {
+        return new SetListSpliterator(this.version, head, false, false);
+    }
+
+    public PrimitiveIterator.OfInt iterator() {
+        return Spliterators.iterator(spliterator());
+    }
+
+    public IntStream stream() {
+        return StreamSupport.intStream(spliterator(), false);
+    }
+
+    /**
+     * A parallel stream over the keys of the set. The set is walked once
+     * when the stream is created, to find where it can be split.
+     */
+    public IntStream parallelStream() {
+        return StreamSupport.intStream(new SetListSpliterator(this.version, head, true, false), true);
+    }
+
+    /**
+     * A spliterator which goes on at newer versions of the set rather
+     * than fail: it hands out, in ascending order and once each, every
+     * key which is in the set throughout, and none which never is, but
+     * not necessarily the keys of a single version.
+     */
+    public Spliterator.OfInt weakSpliterator() {
+        return new SetListSpliterator(this.version, head, false, true);
+    }
+
+    public IntStream weakStream() {
+        return StreamSupport.intStream(weakSpliterator(), false);
+    }
+
+    public IntStream weakParallelStream() {
+        return StreamSupport.intStream(new SetListSpliterator(this.version, head, true, true), true);
+    }
+
+    /**
+     * Atomically replaces from by to. Nothing changes, and false is
+     * returned, unless from is in the set and to is not; in particular
+     * moving a key onto itself always returns false.
+     */
+    public boolean move(int from, int to) {
+        if (from == to) {
+            return false;
+        }
+        this.reclamation.enter();
+        try {
+            Transaction tx = this.cursors.get().transaction;
+            Node node = null;
+
+            transaction:
+            for (int aborts = 0; ; aborts++) {
+                attempt(tx, aborts, false);
+
+                Node pred = findPred(tx, head, from);
+                if (pred == null) {
+                    continue transaction;
+                }
+                Node curr = tx.next(pred);
+                if (curr == null) {
+                    continue transaction;
+                }
+                if (curr.key != from) {
+                    if (node != null) {
+                        this.reclamation.free(node);
                     }
+                    return false;
+                }
+                Node succ = tx.next(curr);
+                if (succ == null) {
+                    continue transaction;
                 }
+                tx.read(pred);
+                tx.read(curr);
+                tx.write(pred, succ);
+                tx.write(curr, succ);
 
-                pred.next = curr.next;
-                pred.updateToVersion(wv);
-                curr.updateToVersion(wv);
-                curr.unlock();
-                pred.unlock();
+                /* This walk sees the list with from already removed */
+                Node toPred = findPred(tx, head, to);
+                if (toPred == null) {
+                    continue transaction;
+                }
+                Node toCurr = tx.next(toPred);
+                if (toCurr == null) {
+                    continue transaction;
+                }
+                if (toCurr.key == to) {
+                    if (node != null) {
+                        this.reclamation.free(node);
+                    }
+                    return false;
+                }
+                if (node == null) {
+                    node = this.reclamation.allocate(to);
+                }
+                node.next = toCurr;
+                tx.read(toPred);
+                tx.write(toPred, node);
 
-                return true;
-            } else {
-                return false;
+                if (tx.commit()) {
+                    this.reclamation.retire(curr);
+                    return true;
+                }
             }
+        } finally {
+            this.reclamation.exit();
         }
     }
 
     public boolean member(int item) {
-        Node pred = head;
-        Node curr = head.next;
-        while (curr.key < item) {
-            pred = curr;
-            curr = pred.next;
-        }
-        if (curr.key == item) {
-            return true;
-        } else {
-            return false;
+        return member(this.cursors.get(), item);
+    }
+
+    /**
+     * member is a read-only transaction: its reads are validated, so it
+     * is linearizable at rv, but it has nothing to commit and does not
+     * touch the clock, the locks or the statistics.
+     */
+    boolean member(Cursor cursor, int item) {
+        this.reclamation.enter();
+        try {
+            Transaction tx = cursor.transaction;
+
+            transaction:
+            for (int aborts = 0; ; aborts++) {
+                attempt(tx, aborts, true);
+
+                Node pred = findPred(tx, cursor.start(head, item), item);
+                if (pred == null) {
+                    continue transaction;
+                }
+                Node curr = tx.next(pred);
+                if (curr == null) {
+                    continue transaction;
+                }
+                cursor.remember(pred, tx.readVersion());
+                return curr.key == item;
+            }
+        } finally {
+            this.reclamation.exit();
         }
     }
 
     /**
      * The function print has side-effects. Therefore
      * it's impossible to write it in a transactional
-     * style.
+     * style: it prints the keys collected by asList.
      */
     public void print() {
-        Node pred = head;
-        Node curr = head.next;
-        while (curr.next != null) {
-            System.out.print(curr.key + " ");
-            curr = curr.next;
+        for (int key : asList()) {
+            System.out.print(key + " ");
         }
         System.out.println("");
     }
 
     /**
-     * This function is not thread-safe (which is not required).
+     * The keys of the set in ascending order, read like those of a range
+     * but LIST_CHUNK keys per transaction, so that writers only ever
+     * restart the chunk they touched. Each chunk is read at a single
+     * version and starts after the last key of the one before, so keys
+     * which stay in the set throughout are all listed, once each, but
+     * the list as a whole need not be that of a single version unless
+     * the set is left alone. Keys are not final, as EpochReclamation
+     * gives them to the nodes it recycles, so they are only read behind
+     * a validated link.
      */
     public List<Integer> asList() {
         ArrayList<Integer> l = new ArrayList<Integer>();
-
-        Node pred = head;
-        Node curr = head.next;
-        while (curr.next != null) {
-            l.add(curr.key);
-            curr = curr.next;
+        int lo = Integer.MIN_VALUE;
+        while (true) {
+            int[] chunk = range(lo, Integer.MAX_VALUE, LIST_CHUNK);
+            for (int key : chunk) {
+                l.add(key);
+            }
+            if (chunk.length < LIST_CHUNK) {
+                return l;
+            }
+            /* Keys are smaller than MAX_VALUE */
+            lo = chunk[chunk.length - 1] + 1;
         }
-        return l;
     }
 }
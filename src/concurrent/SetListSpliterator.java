@@ -0,0 +1,355 @@
+package concurrent;
+
+/*
+    A Spliterator over the keys of a SetList, starting at the version rv
+    of the set sampled when the spliterator is created. Nothing is
+    copied: the nodes are read in place, and every read is bracketed by
+    two reads of the node's versioned lock, as in a read-only
+    transaction. As long as the nodes still to be read are not newer
+    than rv, the keys handed out are exactly those of the set at rv.
+
+    Once a writer got to one of them first, the set at rv cannot be
+    completed any more. A snapshot spliterator then moves to the
+    current version rv' only if that is still a snapshot: if nothing
+    was handed out yet, it starts over from the head, and otherwise it
+    walks again from the head to the last node it read. If every one of
+    those nodes is still unlocked and not newer than rv, none of them
+    changed since it was read, so what was handed out is also the start
+    of the set at rv', and it carries on at rv'. Otherwise, and always
+    once the spliterator was split, as its siblings share its version,
+    it throws ConcurrentModificationException: the keys handed out by a
+    snapshot spliterator are those of a single version of the set, or
+    it fails.
+
+    A weak spliterator never fails that way. It moves on to the current
+    version and carries on from the last node it read, if that node is
+    unchanged and so still linked, or else from the head, skipping the
+    keys it already handed out. The keys are then those of version rv up
+    to the first such move, and of successively newer versions after it:
+    they are still handed out in ascending order and once each, every
+    key which is in the set throughout is handed out, and none which
+    never is, but they need not be the set at any single version.
+
+    Either kind only gives up after MAX_RETRIES moves in a row without
+    reading a single node, with ConcurrentModificationException.
+
+    A singly linked list cannot be cut in the middle without walking to
+    the middle, so the first trySplit walks the remaining range once,
+    with validated reads but without handing anything out, and records
+    every SPLIT_STRIDE-th node it passes as a fence. Spliterators split
+    off afterwards cover the keys between consecutive fences, and each
+    of them starts right at its first fence, or from the head if that
+    node changed in the meantime. A spliterator meant for a parallel
+    stream records its fences when it is created instead, so that the
+    stream knows how large the set is before it decides how far to
+    split.
+*/
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.ConcurrentModificationException;
+import java.util.Spliterator;
+import java.util.function.IntConsumer;
+
+final class SetListSpliterator implements Spliterator.OfInt {
+
+    /* How many nodes lie between two fences */
+    private static final int SPLIT_STRIDE = 1024;
+
+    /* How many times in a row a read may move on to a newer version */
+    private static final int MAX_RETRIES = 16;
+
+    private final VersionClock clock;
+    private final Node head;
+    /* Whether it may hand out keys of several versions rather than fail */
+    private final boolean weak;
+    private int rv;
+    private int retries = 0;
+
+    /* The next node to read; its key is handed out if it is in [lo, hi) */
+    private Node curr;
+    private int lo;
+    private final int hi;
+
+    /* The node read last before curr, and its versioned lock, or null */
+    private Node prev = null;
+    private int prevLock;
+
+    /* The key, successor and versioned lock of the node read last */
+    private int key;
+    private Node next;
+    private int lock;
+
+    /*
+        The first node of each run of SPLIT_STRIDE nodes, and its key,
+        once the range was walked. This spliterator covers the runs from
+        from inclusive to to exclusive.
+     */
+    private Node[] fences = null;
+    private int[] fenceKeys;
+    private int from;
+    private int to;
+
+    /* Whether a key was handed out since the fences were recorded */
+    private boolean started = false;
+
+    SetListSpliterator(VersionClock clock, Node head, boolean parallel, boolean weak) {
+        this.clock = clock;
+        this.head = head;
+        this.weak = weak;
+        this.rv = clock.read();
+        /* The head holds MIN_VALUE, which is never handed out */
+        this.curr = head;
+        this.lo = Integer.MIN_VALUE + 1;
+        this.hi = Integer.MAX_VALUE;
+        if (parallel) {
+            fence();
+        }
+    }
+
+    private SetListSpliterator(SetListSpliterator parent, int from, int to) {
+        this.clock = parent.clock;
+        this.head = parent.head;
+        this.weak = parent.weak;
+        this.rv = parent.rv;
+        this.fences = parent.fences;
+        this.fenceKeys = parent.fenceKeys;
+        this.from = from;
+        this.to = to;
+        this.curr = fences[from];
+        this.lo = from == parent.from ? parent.lo : fenceKeys[from];
+        this.hi = to == fenceKeys.length ? parent.hi : fenceKeys[to];
+    }
+
+    /**
+     * Reads the key, the successor and the versioned lock of node into
+     * key, next and lock, and returns whether node was unchanged and
+     * not newer than version across the reads. A node which is locked
+     * is waited for, as the commit holding it may still fail and leave
+     * it as it was.
+     */
+    private boolean readable(Node node, int version) {
+        while (true) {
+            int vl = node.versionedLock();
+            if (VL.getVersion(vl) > version) {
+                this.clock.observe(VL.getVersion(vl));
+                return false;
+            }
+            if (VL.isLocked(vl)) {
+                Thread.yield();
+                continue;
+            }
+            key = node.key;
+            next = node.next;
+            if (node.versionedLock() == vl) {
+                lock = vl;
+                return true;
+            }
+        }
+    }
+
+    /* Reads curr, moving on to newer versions until it can be read */
+    private void read() {
+        while (!readable(curr, rv)) {
+            resume();
+        }
+        retries = 0;
+    }
+
+    /**
+     * Moves on to the current version of the set after curr could not
+     * be read, as described at the top, or throws.
+     */
+    private void resume() {
+        if (++retries > MAX_RETRIES) {
+            throw new ConcurrentModificationException();
+        }
+        int version = this.clock.read();
+        if (weak) {
+            rv = version;
+            if (prev != null && readable(prev, rv) && lock == prevLock) {
+                curr = next;
+                return;
+            }
+            prev = null;
+            curr = head;
+            return;
+        }
+
+        if (fences != null) {
+            throw new ConcurrentModificationException();
+        }
+        if (started && !unchanged()) {
+            throw new ConcurrentModificationException();
+        }
+        if (!started) {
+            prev = null;
+            curr = head;
+        }
+        rv = version;
+    }
+
+    /**
+     * Whether every node from the head to prev is unlocked and not newer
+     * than rv, and so as it was read.
+     */
+    private boolean unchanged() {
+        Node node = head;
+        while (readable(node, rv)) {
+            if (node == prev) {
+                return true;
+            }
+            if (next == null) {
+                return false;
+            }
+            node = next;
+        }
+        return false;
+    }
+
+    /**
+     * Reads up to the next key to hand out, which is left in key, and
+     * returns false if there is none.
+     */
+    private boolean advance() {
+        while (true) {
+            read();
+            if (key >= hi) {
+                return false;
+            }
+            prev = curr;
+            prevLock = lock;
+            curr = next;
+            if (key >= lo) {
+                /* Keys are smaller than hi, hence than MAX_VALUE */
+                lo = key + 1;
+                started = true;
+                return true;
+            }
+        }
+    }
+
+    public boolean tryAdvance(IntConsumer action) {
+        if (!advance()) {
+            return false;
+        }
+        action.accept(key);
+        return true;
+    }
+
+    public void forEachRemaining(IntConsumer action) {
+        while (advance()) {
+            action.accept(key);
+        }
+    }
+
+    /**
+     * Walks from curr to hi once to record the fences. A walk which
+     * meets a changed node moves on to a newer version: a weak one as
+     * advance does, and a snapshot one, which has not handed out
+     * anything, by starting over. Afterwards the spliterator starts
+     * from that version.
+     */
+    private void fence() {
+        Node[] nodes = new Node[4];
+        int[] keys = new int[4];
+        int count = 0;
+        /* The smallest key the walk has yet to pass */
+        int floor = lo;
+        int passed = 0;
+        Node node = curr;
+        Node last = prev;
+        int lastLock = prevLock;
+        int version = rv;
+        int failures = 0;
+
+        while (true) {
+            if (!readable(node, version)) {
+                if (++failures > MAX_RETRIES) {
+                    throw new ConcurrentModificationException();
+                }
+                version = this.clock.read();
+                if (!weak) {
+                    node = head;
+                    last = null;
+                    floor = lo;
+                    passed = 0;
+                    count = 0;
+                } else if (last != null && readable(last, version) && lock == lastLock) {
+                    node = next;
+                } else {
+                    node = head;
+                    last = null;
+                }
+                continue;
+            }
+            failures = 0;
+            if (key >= hi) {
+                break;
+            }
+            if (key >= floor) {
+                if (passed++ % SPLIT_STRIDE == 0) {
+                    if (count == nodes.length) {
+                        nodes = Arrays.copyOf(nodes, 2 * count);
+                        keys = Arrays.copyOf(keys, 2 * count);
+                    }
+                    nodes[count] = node;
+                    keys[count] = key;
+                    count++;
+                }
+                floor = key + 1;
+            }
+            last = node;
+            lastLock = lock;
+            node = next;
+        }
+        fences = Arrays.copyOf(nodes, count);
+        fenceKeys = Arrays.copyOf(keys, count);
+        from = 0;
+        to = count;
+        started = false;
+        rv = version;
+        if (count > 0) {
+            curr = fences[0];
+            prev = null;
+        }
+    }
+
+    public Spliterator.OfInt trySplit() {
+        if (fences == null) {
+            /* What a snapshot handed out could not be checked again after a split */
+            if (started && !weak) {
+                return null;
+            }
+            fence();
+        } else if (started) {
+            return null;
+        }
+        if (to - from < 2) {
+            return null;
+        }
+        int mid = (from + to) >>> 1;
+        SetListSpliterator prefix = new SetListSpliterator(this, from, mid);
+        from = mid;
+        curr = fences[mid];
+        prev = null;
+        lo = fenceKeys[mid];
+        return prefix;
+    }
+
+    public long estimateSize() {
+        if (fences == null) {
+            return Long.MAX_VALUE;
+        }
+        return (long) (to - from) * SPLIT_STRIDE;
+    }
+
+    public int characteristics() {
+        return ORDERED | DISTINCT | SORTED | NONNULL | CONCURRENT;
+    }
+
+    /* The keys are sorted in their natural order */
+    public Comparator<? super Integer> getComparator() {
+        return null;
+    }
+}
@@ -0,0 +1,134 @@
+package concurrent;
+
+/*
+    Represent a set of integers as a row of SetLists, each holding the
+    keys of one range: [lo, hi) is cut into count ranges of the same
+    width, the keys below lo go to the first one and those from hi on to
+    the last one. Every shard has a clock of its own, so writers working
+    on different ranges neither tick the same clock nor walk the same
+    nodes, and a search only walks the shard of its key.
+
+    Each operation on one key is an operation on its shard, and so as
+    atomic as it is there. The range operations are atomic within each
+    shard only: they visit the shards in order of their ranges, each at
+    its own version.
+*/
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntConsumer;
+
+import test.Set;
+
+public class ShardedSet implements Set {
+
+    private final SetList[] shards;
+
+    private final int lo;
+
+    /* How many keys each shard covers, the last one aside */
+    private final long width;
+
+    public ShardedSet(int count, int lo, int hi) {
+        if (count < 1 || hi <= lo) {
+            throw new IllegalArgumentException("Invalid sharding of [" + lo + ", " + hi + ") in " + count);
+        }
+        shards = new SetList[count];
+        for (int i = 0; i < count; i++) {
+            shards[i] = new SetList();
+        }
+        this.lo = lo;
+        this.width = ((long) hi - lo + count - 1) / count;
+    }
+
+    /* The index of the shard holding item; it never decreases as item grows */
+    private int shard(int item) {
+        long offset = (long) item - lo;
+        if (offset < 0) {
+            return 0;
+        }
+        return (int) Math.min(offset / width, shards.length - 1);
+    }
+
+    public int shards() {
+        return shards.length;
+    }
+
+    public boolean add(int item) {
+        return shards[shard(item)].add(item);
+    }
+
+    public boolean remove(int item) {
+        return shards[shard(item)].remove(item);
+    }
+
+    public boolean member(int item) {
+        return shards[shard(item)].member(item);
+    }
+
+    /**
+     * Calls action on every key from lo inclusive to hi exclusive, in
+     * ascending order (see SetList.forEachInRange). The keys of each
+     * shard are those of a single version of that shard.
+     */
+    public void forEachInRange(int lo, int hi, IntConsumer action) {
+        if (hi <= lo) {
+            return;
+        }
+        for (int i = shard(lo); i <= shard(hi - 1); i++) {
+            shards[i].forEachInRange(lo, hi, action);
+        }
+    }
+
+    public int countInRange(int lo, int hi) {
+        if (hi <= lo) {
+            return 0;
+        }
+        int count = 0;
+        for (int i = shard(lo); i <= shard(hi - 1); i++) {
+            count += shards[i].countInRange(lo, hi);
+        }
+        return count;
+    }
+
+    /**
+     * The smallest key larger than item, or MAX_VALUE if there is none.
+     */
+    public int firstAfter(int item) {
+        if (item >= Integer.MAX_VALUE - 1) {
+            return Integer.MAX_VALUE;
+        }
+        for (int i = shard(item + 1); i < shards.length; i++) {
+            int key = shards[i].firstAfter(item);
+            if (key != Integer.MAX_VALUE) {
+                return key;
+            }
+        }
+        return Integer.MAX_VALUE;
+    }
+
+    /**
+     * The function print has side-effects. Therefore
+     * it's impossible to write it in a transactional
+     * style.
+     */
+    public void print() {
+        for (SetList shard : shards) {
+            for (int key : shard.asList()) {
+                System.out.print(key + " ");
+            }
+        }
+        System.out.println("");
+    }
+
+    /**
+     * This function is not thread-safe (which is not required).
+     */
+    public List<Integer> asList() {
+        ArrayList<Integer> l = new ArrayList<Integer>();
+        for (SetList shard : shards) {
+            l.addAll(shard.asList());
+        }
+        return l;
+    }
+}
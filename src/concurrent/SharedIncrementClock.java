@@ -0,0 +1,35 @@
+package concurrent;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ *  GV4 in the TL2 paper: a committing transaction tries a single CAS
+ *  on the counter. If it fails, somebody else just incremented it, and
+ *  the new value is as good a wv as ours would have been, so we share
+ *  it instead of retrying. Under contention this turns a CAS loop into
+ *  at most one CAS per commit.
+ *
+ *  Since several commits may share a wv, it never proves exclusivity.
+ */
+public final class SharedIncrementClock implements VersionClock {
+    private final AtomicInteger version = new AtomicInteger(0);
+
+    public int read() {
+        return version.get();
+    }
+
+    public int tick(int rv) {
+        int current = version.get();
+        if (version.compareAndSet(current, current + 1)) {
+            return current + 1;
+        }
+        return version.get();
+    }
+
+    public boolean isExclusive(int rv, int wv) {
+        return false;
+    }
+
+    public void observe(int version) {
+    }
+}
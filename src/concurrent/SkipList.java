@@ -0,0 +1,327 @@
+package concurrent;
+
+/*
+    Represent a set of integers as a skip list of ordered nodes
+    with operations to add, remove, check membership, and print.
+    Every level is an ordered list going from the head sentinel to
+    the tail sentinel; only the bottom level decides membership.
+    Integers are supposed to be greater than MIN_VALUE and smaller
+    than MAX_VALUE.
+
+    Synchronisation follows the same TL2 scheme as SetList: reads are
+    validated against the version sampled at the beginning of the
+    transaction, and a commit only locks the nodes it writes, that
+    is the predecessors of the key at every level it spans (plus the
+    removed node itself).
+*/
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+import test.Set;
+
+public class SkipList implements Set {
+
+    /* Enough levels for a few tens of millions of keys */
+    static final int MAX_LEVEL = 24;
+
+    /* As per TL2, we require the version of each SkipList instance */
+    private final VersionClock version;
+
+    private final SkipNode head;
+
+    /* The predecessors and successors found by the last search of a thread */
+    private static final class Scratch {
+        final SkipNode[] preds = new SkipNode[MAX_LEVEL];
+        final SkipNode[] succs = new SkipNode[MAX_LEVEL];
+    }
+
+    private final ThreadLocal<Scratch> scratch = new ThreadLocal<Scratch>() {
+        @Override
+        protected Scratch initialValue() {
+            return new Scratch();
+        }
+    };
+
+    public SkipList() {
+        this(new StrictClock());
+    }
+
+    public SkipList(VersionClock clock) {
+        version = clock;
+        head = new SkipNode(Integer.MIN_VALUE, MAX_LEVEL);
+        SkipNode tail = new SkipNode(Integer.MAX_VALUE, MAX_LEVEL);
+        for (int level = 0; level < MAX_LEVEL; level++) {
+            head.next[level] = tail;
+        }
+    }
+
+    /**
+     * Geometric distribution with p = 1/2, capped at MAX_LEVEL.
+     */
+    private static int randomLevel() {
+        int r = ThreadLocalRandom.current().nextInt();
+        return Math.min(MAX_LEVEL, Integer.numberOfTrailingZeros(r) + 1);
+    }
+
+    /**
+     * A node can be read if it is unlocked and not newer than rv.
+     */
+    private boolean readable(int vl, int rv) {
+        if (VL.getVersion(vl) > rv) {
+            this.version.observe(VL.getVersion(vl));
+            return false;
+        }
+        return !VL.isLocked(vl);
+    }
+
+    /**
+     * Fills preds and succs with, for every level, the last node whose
+     * key is smaller than item and its successor at that level.
+     * Returns false if one of the reads could not be validated against
+     * rv, in which case the transaction has to be restarted.
+     */
+    private boolean find(int item, int rv, SkipNode[] preds, SkipNode[] succs) {
+        int vl, vl1;
+        SkipNode pred = head;
+
+        for (int level = MAX_LEVEL - 1; level >= 0; level--) {
+            vl = pred.versionedLock();
+            if (!readable(vl, rv)) {
+                return false;
+            }
+            SkipNode curr = pred.next[level];
+            vl1 = pred.versionedLock();
+            if (vl1 != vl) {
+                return false;
+            }
+
+            while (curr.key < item) {
+                pred = curr;
+
+                vl = pred.versionedLock();
+                if (!readable(vl, rv)) {
+                    return false;
+                }
+                curr = pred.next[level];
+                vl1 = pred.versionedLock();
+                if (vl1 != vl) {
+                    return false;
+                }
+            }
+            preds[level] = pred;
+            succs[level] = curr;
+        }
+        return true;
+    }
+
+    /**
+     * Locks the distinct predecessors of the levels [0, height).
+     * A node that is the predecessor at several levels appears at
+     * consecutive positions of preds, so it is enough to compare
+     * with the previous level. On failure nothing stays locked.
+     */
+    private static boolean lockPreds(SkipNode[] preds, int height) {
+        for (int level = 0; level < height; level++) {
+            if (level > 0 && preds[level] == preds[level - 1]) {
+                continue;
+            }
+            if (!preds[level].lock()) {
+                unlockPreds(preds, level);
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void unlockPreds(SkipNode[] preds, int height) {
+        for (int level = 0; level < height; level++) {
+            if (level > 0 && preds[level] == preds[level - 1]) {
+                continue;
+            }
+            preds[level].unlock();
+        }
+    }
+
+    /**
+     * The predecessors are both our read set and our write set.
+     * They are locked by us, so we only have to check that nobody
+     * committed to them since rv.
+     */
+    private static boolean validatePreds(SkipNode[] preds, int height, int rv) {
+        for (int level = 0; level < height; level++) {
+            if (VL.getVersion(preds[level].versionedLock()) > rv) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void commitPreds(SkipNode[] preds, int height, int wv) {
+        for (int level = 0; level < height; level++) {
+            if (level > 0 && preds[level] == preds[level - 1]) {
+                continue;
+            }
+            preds[level].unlock(wv);
+        }
+    }
+
+    public boolean add(int item) {
+        Scratch buffers = this.scratch.get();
+        SkipNode[] preds = buffers.preds;
+        SkipNode[] succs = buffers.succs;
+        SkipNode node = null;
+
+        transaction:
+        while (true) {
+            int rv = this.version.read();
+
+            if (!find(item, rv, preds, succs)) {
+                continue transaction;
+            }
+            if (succs[0].key == item) {
+                return false;
+            }
+
+            /* The node is private until the commit, so it survives retries */
+            if (node == null) {
+                node = new SkipNode(item, randomLevel());
+            }
+            int height = node.height();
+            for (int level = 0; level < height; level++) {
+                node.next[level] = succs[level];
+            }
+
+            if (!lockPreds(preds, height)) {
+                continue transaction;
+            }
+
+            int wv = this.version.tick(rv);
+            if (!this.version.isExclusive(rv, wv) && !validatePreds(preds, height, rv)) {
+                unlockPreds(preds, height);
+                continue transaction;
+            }
+
+            for (int level = 0; level < height; level++) {
+                preds[level].next[level] = node;
+            }
+            commitPreds(preds, height, wv);
+            return true;
+        }
+    }
+
+    public boolean remove(int item) {
+        Scratch buffers = this.scratch.get();
+        SkipNode[] preds = buffers.preds;
+        SkipNode[] succs = buffers.succs;
+
+        transaction:
+        while (true) {
+            int rv = this.version.read();
+
+            if (!find(item, rv, preds, succs)) {
+                continue transaction;
+            }
+            SkipNode victim = succs[0];
+            if (victim.key != item) {
+                return false;
+            }
+
+            /*
+                All the levels of a node are linked in the same commit,
+                so a validated traversal sees it at each of its levels.
+             */
+            int height = victim.height();
+            for (int level = 1; level < height; level++) {
+                if (succs[level] != victim) {
+                    continue transaction;
+                }
+            }
+
+            if (!lockPreds(preds, height)) {
+                continue transaction;
+            }
+            if (!victim.lock()) {
+                unlockPreds(preds, height);
+                continue transaction;
+            }
+
+            int wv = this.version.tick(rv);
+            if (!this.version.isExclusive(rv, wv)) {
+                if (!validatePreds(preds, height, rv)
+                        || VL.getVersion(victim.versionedLock()) > rv) {
+                    victim.unlock();
+                    unlockPreds(preds, height);
+                    continue transaction;
+                }
+            }
+
+            for (int level = height - 1; level >= 0; level--) {
+                preds[level].next[level] = victim.next[level];
+            }
+            victim.unlock(wv);
+            commitPreds(preds, height, wv);
+            return true;
+        }
+    }
+
+    /**
+     * A read-only transaction: the same validated search as find, which
+     * keeps nothing but the node it is at. Nothing is locked, and since
+     * every read was valid at rv, the answer is the one of version rv.
+     */
+    public boolean member(int item) {
+        transaction:
+        while (true) {
+            int rv = this.version.read();
+            SkipNode pred = head;
+            SkipNode curr = null;
+
+            for (int level = MAX_LEVEL - 1; level >= 0; level--) {
+                while (true) {
+                    int vl = pred.versionedLock();
+                    if (!readable(vl, rv)) {
+                        continue transaction;
+                    }
+                    curr = pred.next[level];
+                    if (pred.versionedLock() != vl) {
+                        continue transaction;
+                    }
+                    if (curr.key >= item) {
+                        break;
+                    }
+                    pred = curr;
+                }
+            }
+            return curr.key == item;
+        }
+    }
+
+    /**
+     * Same caveat as SetList.print: walks the bottom level
+     * without any validation.
+     */
+    public void print() {
+        SkipNode curr = head.next[0];
+        while (curr.next[0] != null) {
+            System.out.print(curr.key + " ");
+            curr = curr.next[0];
+        }
+        System.out.println("");
+    }
+
+    /**
+     * This function is not thread-safe (which is not required).
+     */
+    public List<Integer> asList() {
+        ArrayList<Integer> l = new ArrayList<Integer>();
+
+        SkipNode curr = head.next[0];
+        while (curr.next[0] != null) {
+            l.add(curr.key);
+            curr = curr.next[0];
+        }
+        return l;
+    }
+}
@@ -0,0 +1,20 @@
+package concurrent;
+/*
+    The node of a skip list. It has one forward pointer per level it
+    belongs to, and a single versioned lock protecting all of them.
+*/
+
+public class SkipNode extends VersionedLock {
+
+    public final int key;
+    public final SkipNode[] next;
+
+    SkipNode(int item, int height) {
+        key = item;
+        next = new SkipNode[height];
+    }
+
+    public int height() {
+        return next.length;
+    }
+}
@@ -0,0 +1,22 @@
+package concurrent;
+
+/**
+ *  Spins for a fixed number of iterations before every restart,
+ *  hinting the processor that we are busy-waiting.
+ */
+public final class SpinBackoff implements ContentionManager {
+    private final int spins;
+
+    public SpinBackoff(int spins) {
+        if (spins < 0) {
+            throw new IllegalArgumentException("Negative spins " + spins);
+        }
+        this.spins = spins;
+    }
+
+    public void onAbort(int aborts) {
+        for (int i = 0; i < spins; i++) {
+            Thread.onSpinWait();
+        }
+    }
+}
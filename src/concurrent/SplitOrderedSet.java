@@ -0,0 +1,238 @@
+package concurrent;
+
+/*
+    Represent a set of integers as a lock-free hash table with split
+    ordering (Shalev and Shavit). All the elements live in a single
+    LockFreeList ordered by bit-reversed hash; a bucket is just a
+    pointer to a sentinel node inside that list, so doubling the table
+    never moves an element: new buckets are lazily initialised by
+    inserting their sentinel after the sentinel of their parent bucket.
+
+    Sort keys are 33 bits: the reversed 32-bit hash shifted by one,
+    with the low bit set for elements and cleared for sentinels, so
+    that the sentinel of a bucket comes before all its elements.
+*/
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import test.Set;
+
+public class SplitOrderedSet implements Set {
+
+    /* Average number of elements per bucket before the table doubles */
+    private static final int LOAD_FACTOR = 2;
+
+    /* Buckets are indexed by the low bits of the hash, at most 30 of them */
+    private static final int MAX_BUCKETS = 1 << 30;
+
+    /*
+        The multipliers of the murmur3 finaliser. They are odd, so every
+        step of the finaliser is a bijection on 32-bit integers, and its
+        shifts fold the high bits of the key into the low bits which
+        select the bucket: multiplying alone would leave the low k bits
+        of the hash a function of the low k bits of the key, and put
+        keys with a stride of 2^k in the same bucket.
+     */
+    private static final int MIX_1 = 0x85EBCA6B;
+    private static final int MIX_2 = 0xC2B2AE35;
+    private static final int MIX_1_INVERSE = inverse(MIX_1);
+    private static final int MIX_2_INVERSE = inverse(MIX_2);
+
+    /*
+        Segment 0 holds bucket 0 and segment s > 0 holds the buckets
+        [2^(s-1), 2^s), so the directory never has to be copied.
+     */
+    private final AtomicReferenceArray<AtomicReferenceArray<LockFreeNode>> segments =
+            new AtomicReferenceArray<AtomicReferenceArray<LockFreeNode>>(32);
+
+    private final AtomicInteger bucketCount = new AtomicInteger(2);
+    private final LongAdder size = new LongAdder();
+
+    public SplitOrderedSet() {
+        LockFreeNode tail = new LockFreeNode(Long.MAX_VALUE, null);
+        LockFreeNode head = new LockFreeNode(sentinelKey(0), tail);
+        segment(0).set(0, head);
+    }
+
+    /* Newton's iteration doubles the number of correct low bits each time */
+    private static int inverse(int a) {
+        int x = a;
+        for (int i = 0; i < 5; i++) {
+            x *= 2 - a * x;
+        }
+        return x;
+    }
+
+    private static int hash(int item) {
+        int h = item;
+        h ^= h >>> 16;
+        h *= MIX_1;
+        h ^= h >>> 13;
+        h *= MIX_2;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    /* Undoes hash, one step at a time from the last one */
+    private static int unhash(int hash) {
+        int h = hash;
+        h ^= h >>> 16;
+        h *= MIX_2_INVERSE;
+        h ^= h >>> 13 ^ h >>> 26;
+        h *= MIX_1_INVERSE;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    private static long elementKey(int hash) {
+        return ((Integer.reverse(hash) & 0xFFFFFFFFL) << 1) | 1;
+    }
+
+    private static long sentinelKey(int bucket) {
+        return (Integer.reverse(bucket) & 0xFFFFFFFFL) << 1;
+    }
+
+    private static int itemOf(long key) {
+        return unhash(Integer.reverse((int) (key >>> 1)));
+    }
+
+    private AtomicReferenceArray<LockFreeNode> segment(int index) {
+        AtomicReferenceArray<LockFreeNode> segment = segments.get(index);
+        if (segment == null) {
+            int length = index == 0 ? 1 : 1 << (index - 1);
+            segments.compareAndSet(index, null, new AtomicReferenceArray<LockFreeNode>(length));
+            segment = segments.get(index);
+        }
+        return segment;
+    }
+
+    /**
+     * Returns the sentinel of bucket, initialising it (and its
+     * parents) first if needed.
+     */
+    private LockFreeNode bucket(int bucket) {
+        int index = 32 - Integer.numberOfLeadingZeros(bucket);
+        int offset = bucket == 0 ? 0 : bucket - Integer.highestOneBit(bucket);
+        AtomicReferenceArray<LockFreeNode> segment = segment(index);
+
+        LockFreeNode sentinel = segment.get(offset);
+        if (sentinel != null) {
+            return sentinel;
+        }
+
+        LockFreeNode parent = bucket(bucket - Integer.highestOneBit(bucket));
+        LockFreeNode node = new LockFreeNode(sentinelKey(bucket), null);
+        sentinel = LockFreeList.insert(parent, node, new LockFreeList.Window());
+        /* Whoever wins, the slot ends up pointing to the sentinel in the list */
+        segment.compareAndSet(offset, null, sentinel);
+        return sentinel;
+    }
+
+    private LockFreeNode bucketOf(int hash) {
+        return bucket(hash & (bucketCount.get() - 1));
+    }
+
+    public boolean add(int item) {
+        int hash = hash(item);
+        LockFreeNode node = new LockFreeNode(elementKey(hash), null);
+        if (LockFreeList.insert(bucketOf(hash), node, new LockFreeList.Window()) != node) {
+            return false;
+        }
+
+        size.increment();
+        int buckets = bucketCount.get();
+        if (buckets < MAX_BUCKETS && size.sum() > (long) buckets * LOAD_FACTOR) {
+            /* Losing this race is fine: somebody else doubled the table */
+            bucketCount.compareAndSet(buckets, 2 * buckets);
+        }
+        return true;
+    }
+
+    public boolean remove(int item) {
+        int hash = hash(item);
+        if (!LockFreeList.delete(bucketOf(hash), elementKey(hash), new LockFreeList.Window())) {
+            return false;
+        }
+        size.decrement();
+        return true;
+    }
+
+    public boolean member(int item) {
+        int hash = hash(item);
+        return LockFreeList.contains(bucketOf(hash), elementKey(hash));
+    }
+
+    /**
+     * The number of elements, as counted by the updates which completed.
+     */
+    public int size() {
+        return (int) size.sum();
+    }
+
+    /**
+     * The largest number of elements found between two consecutive
+     * sentinels of the list, which is the longest a search can walk.
+     * This function is not thread-safe (which is not required).
+     */
+    public int longestChain() {
+        int longest = 0;
+        int chain = 0;
+        LockFreeNode curr = segment(0).get(0).next.getReference();
+        while (curr.next.getReference() != null) {
+            if ((curr.key & 1) == 0) {
+                chain = 0;
+            } else if (!curr.next.isMarked()) {
+                longest = Math.max(longest, ++chain);
+            }
+            curr = curr.next.getReference();
+        }
+        return longest;
+    }
+
+    /**
+     * The elements are in split order in the list, so
+     * they have to be sorted before being printed.
+     */
+    public void print() {
+        for (int item : sortedItems()) {
+            System.out.print(item + " ");
+        }
+        System.out.println("");
+    }
+
+    /**
+     * This function is not thread-safe (which is not required).
+     */
+    public List<Integer> asList() {
+        int[] items = sortedItems();
+        ArrayList<Integer> l = new ArrayList<Integer>(items.length);
+        for (int item : items) {
+            l.add(item);
+        }
+        return l;
+    }
+
+    private int[] sortedItems() {
+        int[] items = new int[16];
+        int count = 0;
+
+        LockFreeNode curr = segment(0).get(0).next.getReference();
+        while (curr.next.getReference() != null) {
+            if ((curr.key & 1) != 0 && !curr.next.isMarked()) {
+                if (count == items.length) {
+                    items = Arrays.copyOf(items, 2 * count);
+                }
+                items[count++] = itemOf(curr.key);
+            }
+            curr = curr.next.getReference();
+        }
+        items = Arrays.copyOf(items, count);
+        Arrays.sort(items);
+        return items;
+    }
+}
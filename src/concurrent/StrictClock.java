@@ -0,0 +1,27 @@
+package concurrent;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ *  The original TL2 clock: every commit increments the counter, so
+ *  every wv is unique and a commit with wv = rv + 1 knows that nobody
+ *  committed in between. Every commit writes the shared counter.
+ */
+public final class StrictClock implements VersionClock {
+    private final AtomicInteger version = new AtomicInteger(0);
+
+    public int read() {
+        return version.get();
+    }
+
+    public int tick(int rv) {
+        return version.incrementAndGet();
+    }
+
+    public boolean isExclusive(int rv, int wv) {
+        return rv + 1 == wv;
+    }
+
+    public void observe(int version) {
+    }
+}
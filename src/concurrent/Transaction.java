@@ -0,0 +1,257 @@
+package concurrent;
+
+/*
+    A TL2 transaction over the nodes of a SetList.
+
+    Every read of a next pointer is validated against the version rv
+    sampled by begin(): the node must be unlocked, not newer than rv,
+    and unchanged across the read. Writes are buffered in the write
+    set and only become visible at commit, which locks the written
+    nodes, takes a new version from the clock, revalidates the read
+    set and then publishes the writes with that version.
+
+    The read set does not need to contain every node that was walked
+    through: in an ordered list it is enough to keep the nodes whose
+    next pointer the result depends on (typically the predecessors),
+    since removing or inserting around them bumps their version.
+
+    A transaction begun with beginReadOnly only reads. Since each of its
+    reads is validated against rv, it already is consistent, and commits
+    without locking, ticking the clock or revalidating anything. It keeps
+    no read set and records nothing in stats either, so that it never
+    writes to memory other threads read, save for observe when it finds
+    the clock lagging behind a node, which the lazy clocks need to make
+    progress.
+
+    A transaction object is reused for many transactions by the same
+    thread, but it must never be shared between threads.
+*/
+
+import java.util.IdentityHashMap;
+
+public final class Transaction {
+
+    private final VersionClock clock;
+    private final TxStats stats;
+    private int rv;
+    private boolean readOnly;
+    /* The version of the last successful commit with writes */
+    private int wv;
+
+    /*
+        Nodes read since the last flush to stats. Flushing happens at
+        the next begin, so the last operation of a thread shows up late.
+     */
+    private int traversed;
+
+    private Node[] readSet = new Node[4];
+    private int readCount;
+
+    /*
+        The written nodes and their next pointers once committed, in
+        the order of their first write. Write sets are usually a couple
+        of nodes and are searched linearly; a batch writing more than
+        INDEXED_WRITES nodes also indexes them by identity.
+     */
+    private static final int INDEXED_WRITES = 8;
+    private Node[] writeNodes = new Node[4];
+    private Node[] writeNexts = new Node[4];
+    private int writeCount;
+    private final IdentityHashMap<Node, Integer> writeIndex = new IdentityHashMap<Node, Integer>();
+
+    Transaction(VersionClock clock, TxStats stats) {
+        this.clock = clock;
+        this.stats = stats;
+    }
+
+    public void begin() {
+        if (traversed != 0 && !readOnly) {
+            stats.recordTraversal(traversed);
+        }
+        traversed = 0;
+        readOnly = false;
+        stats.recordAttempt();
+        rv = this.clock.read();
+        readCount = 0;
+        clearWrites();
+    }
+
+    public void beginReadOnly() {
+        if (traversed != 0 && !readOnly) {
+            stats.recordTraversal(traversed);
+        }
+        traversed = 0;
+        readOnly = true;
+        rv = this.clock.read();
+        readCount = 0;
+        clearWrites();
+    }
+
+    private void clearWrites() {
+        if (writeCount > INDEXED_WRITES) {
+            writeIndex.clear();
+        }
+        writeCount = 0;
+    }
+
+    /* The position of node in the write set, or -1 */
+    private int indexOf(Node node) {
+        if (writeCount > INDEXED_WRITES) {
+            Integer i = writeIndex.get(node);
+            return i == null ? -1 : i;
+        }
+        for (int i = 0; i < writeCount; i++) {
+            if (writeNodes[i] == node) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the successor of node as seen by this transaction, or
+     * null if the read could not be validated against rv, in which
+     * case the transaction has to be restarted.
+     */
+    public Node next(Node node) {
+        if (writeCount != 0) {
+            int i = indexOf(node);
+            if (i >= 0) {
+                return writeNexts[i];
+            }
+        }
+
+        traversed++;
+        int vl = node.versionedLock();
+        if (VL.getVersion(vl) > rv) {
+            this.clock.observe(VL.getVersion(vl));
+            return abort(AbortReason.VERSION);
+        }
+        if (VL.isLocked(vl)) {
+            return abort(AbortReason.LOCKED);
+        }
+        Node next = node.next;
+        int vl1 = node.versionedLock();
+        if (vl1 != vl) {
+            return abort(AbortReason.INCONSISTENT_READ);
+        }
+        return next;
+    }
+
+    private Node abort(AbortReason reason) {
+        if (!readOnly) {
+            stats.recordAbort(reason);
+        }
+        return null;
+    }
+
+    /**
+     * Adds node to the read set: the commit fails if somebody else
+     * committed to it since rv.
+     */
+    public void read(Node node) {
+        if (readOnly) {
+            return;
+        }
+        if (readCount == readSet.length) {
+            Node[] larger = new Node[2 * readCount];
+            System.arraycopy(readSet, 0, larger, 0, readCount);
+            readSet = larger;
+        }
+        readSet[readCount++] = node;
+    }
+
+    /**
+     * Buffers node.next = next. Writing a node's current successor
+     * is useful too: it still locks the node and bumps its version,
+     * which is how a removed node is invalidated.
+     */
+    public void write(Node node, Node next) {
+        if (readOnly) {
+            throw new IllegalStateException("Write in a read-only transaction");
+        }
+        int i = indexOf(node);
+        if (i >= 0) {
+            writeNexts[i] = next;
+            return;
+        }
+        if (writeCount == writeNodes.length) {
+            Node[] larger = new Node[2 * writeCount];
+            System.arraycopy(writeNodes, 0, larger, 0, writeCount);
+            writeNodes = larger;
+            larger = new Node[2 * writeCount];
+            System.arraycopy(writeNexts, 0, larger, 0, writeCount);
+            writeNexts = larger;
+        }
+        writeNodes[writeCount] = node;
+        writeNexts[writeCount] = next;
+        writeCount++;
+        if (writeCount > INDEXED_WRITES) {
+            if (writeCount == INDEXED_WRITES + 1) {
+                for (int j = 0; j < INDEXED_WRITES; j++) {
+                    writeIndex.put(writeNodes[j], j);
+                }
+            }
+            writeIndex.put(node, writeCount - 1);
+        }
+    }
+
+    int readVersion() {
+        return rv;
+    }
+
+    int writeVersion() {
+        return wv;
+    }
+
+    public boolean isReadOnly() {
+        return readOnly || writeCount == 0;
+    }
+
+    /**
+     * Tries to commit. On failure nothing was published and the
+     * transaction has to be restarted.
+     * A transaction without writes always commits, as each of its
+     * reads was already validated against rv.
+     */
+    public boolean commit() {
+        if (writeCount == 0) {
+            return true;
+        }
+
+        for (int i = 0; i < writeCount; i++) {
+            if (!writeNodes[i].lock()) {
+                unlock(i);
+                stats.recordAbort(AbortReason.LOCK_FAILED);
+                return false;
+            }
+        }
+
+        wv = this.clock.tick(rv);
+        if (!this.clock.isExclusive(rv, wv)) {
+            for (int i = 0; i < readCount; i++) {
+                Node node = readSet[i];
+                int vl = node.versionedLock();
+                if ((VL.isLocked(vl) && indexOf(node) < 0) || VL.getVersion(vl) > rv) {
+                    unlock(writeCount);
+                    stats.recordAbort(AbortReason.VALIDATION);
+                    return false;
+                }
+            }
+        }
+
+        for (int i = 0; i < writeCount; i++) {
+            writeNodes[i].next = writeNexts[i];
+            writeNodes[i].unlock(wv);
+        }
+        stats.recordCommit();
+        return true;
+    }
+
+    /* Unlocks the first count nodes of the write set */
+    private void unlock(int count) {
+        for (int i = 0; i < count; i++) {
+            writeNodes[i].unlock();
+        }
+    }
+}
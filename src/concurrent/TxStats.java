@@ -0,0 +1,143 @@
+package concurrent;
+
+/*
+    Counters describing the transactions run on one set: how many
+    attempts, commits and aborts (by reason), and how many nodes were
+    traversed. They are striped LongAdders, so recording never
+    allocates once the stripes exist, and threads updating them do not
+    fight over a single cache line. Reading them is comparatively slow
+    and only weakly consistent, which is fine for monitoring.
+
+    The number of operations is not counted directly: every attempt
+    either aborts or finishes the operation, so it is the difference
+    between the two.
+*/
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+public final class TxStats implements TxStatsMBean {
+
+    private static final AbortReason[] REASONS = AbortReason.values();
+
+    private final LongAdder attempts = new LongAdder();
+    private final LongAdder commits = new LongAdder();
+    private final LongAdder traversed = new LongAdder();
+    private final LongAdder[] aborts = new LongAdder[REASONS.length];
+
+    public TxStats() {
+        for (int i = 0; i < aborts.length; i++) {
+            aborts[i] = new LongAdder();
+        }
+    }
+
+    void recordAttempt() {
+        attempts.increment();
+    }
+
+    void recordCommit() {
+        commits.increment();
+    }
+
+    void recordAbort(AbortReason reason) {
+        aborts[reason.ordinal()].increment();
+    }
+
+    void recordTraversal(int nodes) {
+        traversed.add(nodes);
+    }
+
+    public long getAborts(AbortReason reason) {
+        return aborts[reason.ordinal()].sum();
+    }
+
+    public long getAborts() {
+        long sum = 0;
+        for (LongAdder adder : aborts) {
+            sum += adder.sum();
+        }
+        return sum;
+    }
+
+    /**
+     * Attempts still running when this is called count as operations.
+     */
+    public long getOperations() {
+        return attempts.sum() - getAborts();
+    }
+
+    public long getCommits() {
+        return commits.sum();
+    }
+
+    public long getVersionAborts() {
+        return getAborts(AbortReason.VERSION);
+    }
+
+    public long getLockedAborts() {
+        return getAborts(AbortReason.LOCKED);
+    }
+
+    public long getInconsistentReadAborts() {
+        return getAborts(AbortReason.INCONSISTENT_READ);
+    }
+
+    public long getLockFailures() {
+        return getAborts(AbortReason.LOCK_FAILED);
+    }
+
+    public long getValidationFailures() {
+        return getAborts(AbortReason.VALIDATION);
+    }
+
+    public long getTraversedNodes() {
+        return traversed.sum();
+    }
+
+    public double getRetriesPerOperation() {
+        long operations = getOperations();
+        return operations == 0 ? 0 : (double) getAborts() / operations;
+    }
+
+    public double getTraversalPerOperation() {
+        long operations = getOperations();
+        return operations == 0 ? 0 : (double) getTraversedNodes() / operations;
+    }
+
+    /**
+     * Not atomic: updates racing with the reset may survive it.
+     */
+    public void reset() {
+        attempts.reset();
+        commits.reset();
+        traversed.reset();
+        for (LongAdder adder : aborts) {
+            adder.reset();
+        }
+    }
+
+    /**
+     * Registers these counters with the platform MBean server under
+     * concurrent:type=TxStats,name=name.
+     */
+    public ObjectName register(String name) throws JMException {
+        ObjectName objectName = ObjectName.getInstance("concurrent:type=TxStats,name=" + ObjectName.quote(name));
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+        return objectName;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder b = new StringBuilder();
+        b.append("operations=").append(getOperations());
+        b.append(" commits=").append(getCommits());
+        for (AbortReason reason : REASONS) {
+            b.append(' ').append(reason.name().toLowerCase()).append('=').append(getAborts(reason));
+        }
+        b.append(" traversed=").append(getTraversedNodes());
+        return b.toString();
+    }
+}
@@ -0,0 +1,21 @@
+package concurrent;
+
+/**
+ *  The JMX view of TxStats. All counters are cumulative since the
+ *  creation of the set (or the last reset), so monitoring tools are
+ *  expected to sample them and look at the differences.
+ */
+public interface TxStatsMBean {
+    long getOperations();
+    long getCommits();
+    long getAborts();
+    long getVersionAborts();
+    long getLockedAborts();
+    long getInconsistentReadAborts();
+    long getLockFailures();
+    long getValidationFailures();
+    long getTraversedNodes();
+    double getRetriesPerOperation();
+    double getTraversalPerOperation();
+    void reset();
+}
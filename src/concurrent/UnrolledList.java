@@ -0,0 +1,426 @@
+package concurrent;
+
+/*
+    Represent a set of integers as an unrolled list: a list of chunks
+    holding up to chunkSize sorted keys each, with operations to add,
+    remove, check membership, and print. A search only follows one
+    pointer per chunk and then scans the keys of a single chunk, which
+    sit next to each other in memory. Integers are supposed to be
+    greater than MIN_VALUE.
+
+    Synchronisation is the TL2 scheme of SkipList, with one versioned
+    lock per chunk. Keys are shifted in place, so every read of a chunk
+    is validated, member included. An add which finds its chunk full
+    splits it in two, locking only that chunk since the new half is not
+    visible yet. A remove which leaves its chunk and the next one less
+    than half full between them merges the next chunk into its own if
+    it can lock it straight away, and leaves the chunks alone otherwise;
+    the chunk merged away is never unlocked.
+
+    The batch operations walk the list once for all their keys, sorted,
+    and commit chunk by chunk: every chunk is a transaction of its own,
+    so a batch is not atomic, but a conflict only restarts the walk of
+    the chunk where it happened.
+*/
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import test.BulkSet;
+
+public class UnrolledList implements BulkSet {
+
+    /* As per TL2, we require the version of each UnrolledList instance */
+    private final VersionClock version;
+
+    private final int chunkSize;
+
+    /* What indexOf returns when the chunk changed since rv */
+    private static final int RETRY = Integer.MIN_VALUE;
+
+    /* The first chunk, which takes every key smaller than the low of the second */
+    private final Chunk head;
+
+    public UnrolledList() {
+        this(new StrictClock());
+    }
+
+    public UnrolledList(VersionClock clock) {
+        this(clock, 32);
+    }
+
+    public UnrolledList(VersionClock clock, int chunkSize) {
+        if (chunkSize < 2) {
+            throw new IllegalArgumentException("Chunks must hold at least 2 keys");
+        }
+        version = clock;
+        this.chunkSize = chunkSize;
+        head = new Chunk(Integer.MIN_VALUE, chunkSize);
+    }
+
+    /**
+     * A chunk can be read if it is unlocked and not newer than rv.
+     */
+    private boolean readable(int vl, int rv) {
+        if (VL.getVersion(vl) > rv) {
+            this.version.observe(VL.getVersion(vl));
+            return false;
+        }
+        return !VL.isLocked(vl);
+    }
+
+    /**
+     * Walks from start, whose low must not be larger than item, to the
+     * chunk whose range contains item. Returns null if one of the reads
+     * could not be validated against rv.
+     */
+    private Chunk find(Chunk start, int item, int rv) {
+        Chunk curr = start;
+        while (true) {
+            int vl = curr.versionedLock();
+            if (!readable(vl, rv)) {
+                return null;
+            }
+            Chunk next = curr.next;
+            if (curr.versionedLock() != vl) {
+                return null;
+            }
+            if (next == null || item < next.low) {
+                return curr;
+            }
+            curr = next;
+        }
+    }
+
+    /**
+     * Validated position of item in chunk (see Chunk.indexOf), or RETRY
+     * if the chunk changed since rv.
+     */
+    private int indexOf(Chunk chunk, int item, int rv) {
+        int vl = chunk.versionedLock();
+        if (!readable(vl, rv)) {
+            return RETRY;
+        }
+        int index = chunk.indexOf(item);
+        if (chunk.versionedLock() != vl) {
+            return RETRY;
+        }
+        return index;
+    }
+
+    /**
+     * Locks chunk and checks that it did not change since rv. Returns
+     * the write version, or RETRY if the transaction has to restart.
+     */
+    private int lockAndValidate(Chunk chunk, int rv) {
+        if (!chunk.lock()) {
+            return RETRY;
+        }
+        int wv = this.version.tick(rv);
+        if (!this.version.isExclusive(rv, wv) && VL.getVersion(chunk.versionedLock()) > rv) {
+            chunk.unlock();
+            return RETRY;
+        }
+        return wv;
+    }
+
+    public boolean add(int item) {
+        transaction:
+        while (true) {
+            int rv = this.version.read();
+            Chunk chunk = find(head, item, rv);
+            if (chunk == null) {
+                continue transaction;
+            }
+            int index = indexOf(chunk, item, rv);
+            if (index == RETRY) {
+                continue transaction;
+            }
+            if (index >= 0) {
+                return false;
+            }
+
+            int wv = lockAndValidate(chunk, rv);
+            if (wv == RETRY) {
+                continue transaction;
+            }
+            Chunk last = insert(chunk, chunk, item);
+            unlock(chunk, last, wv);
+            return true;
+        }
+    }
+
+    /**
+     * Inserts item, which is missing, into target, which is locked, or
+     * into the upper half of target if it has to be split. The upper
+     * half is created locked and linked after target: nobody can reach
+     * it before target is unlocked anyway. Returns the last chunk of
+     * those locked so far, which is last unless a chunk was split after it.
+     */
+    private Chunk insert(Chunk target, Chunk last, int item) {
+        if (target.count == chunkSize) {
+            int half = chunkSize / 2;
+            Chunk upper = new Chunk(target.keys[half], chunkSize);
+            upper.lock();
+            System.arraycopy(target.keys, half, upper.keys, 0, chunkSize - half);
+            upper.count = chunkSize - half;
+            upper.next = target.next;
+            target.next = upper;
+            target.count = half;
+            if (last == target) {
+                last = upper;
+            }
+            if (item >= upper.low) {
+                target = upper;
+            }
+        }
+        int position = ~target.indexOf(item);
+        System.arraycopy(target.keys, position, target.keys, position + 1, target.count - position);
+        target.keys[position] = item;
+        target.count++;
+        return last;
+    }
+
+    /* Unlocks the chunks from first to last at version wv */
+    private static void unlock(Chunk first, Chunk last, int wv) {
+        Chunk chunk = first;
+        while (chunk != last) {
+            Chunk next = chunk.next;
+            chunk.unlock(wv);
+            chunk = next;
+        }
+        last.unlock(wv);
+    }
+
+    public boolean remove(int item) {
+        transaction:
+        while (true) {
+            int rv = this.version.read();
+            Chunk chunk = find(head, item, rv);
+            if (chunk == null) {
+                continue transaction;
+            }
+            int index = indexOf(chunk, item, rv);
+            if (index == RETRY) {
+                continue transaction;
+            }
+            if (index < 0) {
+                return false;
+            }
+
+            int wv = lockAndValidate(chunk, rv);
+            if (wv == RETRY) {
+                continue transaction;
+            }
+            System.arraycopy(chunk.keys, index + 1, chunk.keys, index, chunk.count - index - 1);
+            chunk.count--;
+            merge(chunk);
+            chunk.unlock(wv);
+            return true;
+        }
+    }
+
+    /**
+     * The next chunk cannot be unlinked without the lock of chunk, so
+     * once we hold both it is safe to fold it into chunk if they are
+     * small enough. The chunk folded in stays locked for good: whoever
+     * still reaches it, through a pointer read before the merge or as
+     * the start of a batch, fails and walks again from head.
+     */
+    private void merge(Chunk chunk) {
+        Chunk next = chunk.next;
+        if (next != null && next.lock()) {
+            if (chunk.count + next.count <= chunkSize / 2) {
+                System.arraycopy(next.keys, 0, chunk.keys, chunk.count, next.count);
+                chunk.count += next.count;
+                chunk.next = next.next;
+            } else {
+                next.unlock();
+            }
+        }
+    }
+
+    /*
+        In the batch operations, start is the chunk where the walk goes
+        on from. It may have been merged away since, but then it is
+        locked, find fails and the walk restarts from head.
+     */
+
+    public int addAll(int... items) {
+        int[] keys = items.clone();
+        Arrays.sort(keys);
+
+        int added = 0;
+        int i = 0;
+        Chunk start = head;
+        transaction:
+        while (i < keys.length) {
+            int rv = this.version.read();
+            Chunk chunk = find(start, keys[i], rv);
+            if (chunk == null) {
+                start = head;
+                continue transaction;
+            }
+            int wv = lockAndValidate(chunk, rv);
+            if (wv == RETRY) {
+                start = head;
+                continue transaction;
+            }
+
+            /* Every key below the low of the next chunk goes into this one */
+            Chunk next = chunk.next;
+            Chunk target = chunk;
+            Chunk last = chunk;
+            for (; i < keys.length && (next == null || keys[i] < next.low); i++) {
+                if (i > 0 && keys[i] == keys[i - 1]) {
+                    continue;
+                }
+                while (target != last && keys[i] >= target.next.low) {
+                    target = target.next;
+                }
+                if (target.indexOf(keys[i]) < 0) {
+                    last = insert(target, last, keys[i]);
+                    added++;
+                }
+            }
+            unlock(chunk, last, wv);
+            start = last;
+        }
+        return added;
+    }
+
+    public int removeAll(int... items) {
+        int[] keys = items.clone();
+        Arrays.sort(keys);
+
+        int removed = 0;
+        int i = 0;
+        Chunk start = head;
+        transaction:
+        while (i < keys.length) {
+            int rv = this.version.read();
+            Chunk chunk = find(start, keys[i], rv);
+            if (chunk == null) {
+                start = head;
+                continue transaction;
+            }
+            int wv = lockAndValidate(chunk, rv);
+            if (wv == RETRY) {
+                start = head;
+                continue transaction;
+            }
+
+            Chunk next = chunk.next;
+            int count = chunk.count;
+            for (; i < keys.length && (next == null || keys[i] < next.low); i++) {
+                int index = chunk.indexOf(keys[i]);
+                if (index >= 0) {
+                    System.arraycopy(chunk.keys, index + 1, chunk.keys, index, chunk.count - index - 1);
+                    chunk.count--;
+                }
+            }
+            removed += count - chunk.count;
+            merge(chunk);
+            chunk.unlock(wv);
+            start = chunk;
+        }
+        return removed;
+    }
+
+    /**
+     * The keys of one chunk are read at the same version, but different
+     * chunks may be read at different versions.
+     */
+    public boolean[] containsAll(int... items) {
+        /* Sorted by key, each with its position in items in the low half */
+        long[] keys = new long[items.length];
+        for (int i = 0; i < items.length; i++) {
+            keys[i] = (long) items[i] << 32 | i;
+        }
+        Arrays.sort(keys);
+        boolean[] result = new boolean[items.length];
+
+        int i = 0;
+        Chunk start = head;
+        transaction:
+        while (i < keys.length) {
+            int rv = this.version.read();
+            Chunk chunk = find(start, (int) (keys[i] >> 32), rv);
+            if (chunk == null) {
+                start = head;
+                continue transaction;
+            }
+
+            int vl = chunk.versionedLock();
+            if (!readable(vl, rv)) {
+                start = head;
+                continue transaction;
+            }
+            Chunk next = chunk.next;
+            int j = i;
+            for (; j < keys.length && (next == null || (int) (keys[j] >> 32) < next.low); j++) {
+                result[(int) keys[j]] = chunk.indexOf((int) (keys[j] >> 32)) >= 0;
+            }
+            if (chunk.versionedLock() != vl) {
+                start = head;
+                continue transaction;
+            }
+            i = j;
+            start = chunk;
+        }
+        return result;
+    }
+
+    public boolean member(int item) {
+        while (true) {
+            int rv = this.version.read();
+            Chunk chunk = find(head, item, rv);
+            if (chunk == null) {
+                continue;
+            }
+            int index = indexOf(chunk, item, rv);
+            if (index != RETRY) {
+                return index >= 0;
+            }
+        }
+    }
+
+    /**
+     * The number of chunks, which is not validated either.
+     */
+    public int chunks() {
+        int chunks = 0;
+        for (Chunk chunk = head; chunk != null; chunk = chunk.next) {
+            chunks++;
+        }
+        return chunks;
+    }
+
+    /**
+     * The function print has side-effects. Therefore
+     * it's impossible to write it in a transactional
+     * style.
+     */
+    public void print() {
+        for (Chunk chunk = head; chunk != null; chunk = chunk.next) {
+            for (int i = 0; i < chunk.count; i++) {
+                System.out.print(chunk.keys[i] + " ");
+            }
+        }
+        System.out.println("");
+    }
+
+    /**
+     * This function is not thread-safe (which is not required).
+     */
+    public List<Integer> asList() {
+        ArrayList<Integer> l = new ArrayList<Integer>();
+        for (Chunk chunk = head; chunk != null; chunk = chunk.next) {
+            for (int i = 0; i < chunk.count; i++) {
+                l.add(chunk.keys[i]);
+            }
+        }
+        return l;
+    }
+}
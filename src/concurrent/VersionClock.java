@@ -0,0 +1,36 @@
+package concurrent;
+
+/**
+ *  The global version clock of TL2. Transactions sample it when they
+ *  begin (rv) and ask it for a write version (wv) when they commit.
+ *
+ *  The only requirement is that a committing transaction gets a wv
+ *  larger than the rv of every transaction that could have read the
+ *  old values, so the strategies differ in how often they write to
+ *  the shared counter, and in how much validation they can skip.
+ */
+public interface VersionClock {
+
+    /**
+     * Samples the read version at the beginning of a transaction.
+     */
+    int read();
+
+    /**
+     * Returns the write version of a transaction which sampled rv and
+     * holds the locks of its write set.
+     */
+    int tick(int rv);
+
+    /**
+     * Whether wv proves that nobody else committed since rv, in which
+     * case the read set does not have to be revalidated.
+     */
+    boolean isExclusive(int rv, int wv);
+
+    /**
+     * Called when a read found a version newer than rv, just before
+     * the transaction is restarted.
+     */
+    void observe(int version);
+}
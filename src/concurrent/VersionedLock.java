@@ -0,0 +1,41 @@
+package concurrent;
+/*
+    The versioned lock of a node, laid out inline as a volatile int
+    rather than as a separate AtomicInteger: this saves an object header
+    and a pointer per node, and the indirection on every read of the
+    lock. Compare and set goes through a field updater.
+*/
+
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+public abstract class VersionedLock {
+
+    private static final AtomicIntegerFieldUpdater<VersionedLock> VERSIONED_LOCK =
+        AtomicIntegerFieldUpdater.newUpdater(VersionedLock.class, "versionedLock");
+
+    private volatile int versionedLock = VL.make(false, 0);
+
+    public int versionedLock() {
+        return this.versionedLock;
+    }
+
+    public void updateToVersion(int version) {
+        this.versionedLock = VL.setVersion(this.versionedLock, version);
+    }
+
+    public boolean lock() {
+        int vl = this.versionedLock;
+        if (VL.isLocked(vl)) { return false; }
+        return VERSIONED_LOCK.compareAndSet(this, vl, VL.setLocked(vl, true));
+    }
+
+    /* Only the owner of the lock writes it, a plain volatile store is enough */
+    public void unlock() {
+        this.versionedLock = VL.setLocked(this.versionedLock, false);
+    }
+
+    /* Publishes version and releases the lock in a single store */
+    public void unlock(int version) {
+        this.versionedLock = VL.make(false, version);
+    }
+}
@@ -0,0 +1,24 @@
+package concurrent;
+
+/**
+ *  Restarts immediately for the first few aborts, then yields the
+ *  processor before every restart. This matters when there are more
+ *  threads than cores: the thread holding the locks we keep running
+ *  into may well be waiting for our core.
+ */
+public final class YieldBackoff implements ContentionManager {
+    private final int threshold;
+
+    public YieldBackoff(int threshold) {
+        if (threshold < 0) {
+            throw new IllegalArgumentException("Negative threshold " + threshold);
+        }
+        this.threshold = threshold;
+    }
+
+    public void onAbort(int aborts) {
+        if (aborts > threshold) {
+            Thread.yield();
+        }
+    }
+}
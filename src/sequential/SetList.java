@@ -3,11 +3,12 @@ package sequential;/* Represent a set of integers as a list of ordered nodes
    At creation, we have two sentinel nodes. Integers are supposed
    to be greater than MIN_VALUE and smaller than MAX_VALUE. */
 
-import test.Set;
+import test.BulkSet;
+import java.util.Arrays;
 import java.util.List;
 import java.util.ArrayList;
 
-public class SetList implements Set{
+public class SetList implements BulkSet{
 
     private Node head;
 
@@ -52,6 +53,109 @@ public class SetList implements Set{
         while (curr.next != null){System.out.print(curr.key+" "); curr=curr.next;}
         System.out.println("");}
 
+    /* The batch operations sort their keys and walk the list only once */
+
+    public synchronized int addAll(int... items)
+    {
+        int[] keys = items.clone();
+        Arrays.sort(keys);
+
+        int added = 0;
+        Node pred = head;
+        for (int item : keys) {
+            while (pred.next.key < item) {
+                pred = pred.next;
+            }
+            if (pred.next.key != item) {
+                Node node = new Node(item);
+                node.next = pred.next;
+                pred.next = node;
+                added++;
+            }
+        }
+        return added;
+    }
+
+    public synchronized int removeAll(int... items)
+    {
+        int[] keys = items.clone();
+        Arrays.sort(keys);
+
+        int removed = 0;
+        Node pred = head;
+        for (int item : keys) {
+            while (pred.next.key < item) {
+                pred = pred.next;
+            }
+            if (pred.next.key == item) {
+                pred.next = pred.next.next;
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    public synchronized boolean[] containsAll(int... items)
+    {
+        /* Sorted by key, each with its position in items in the low half */
+        long[] keys = new long[items.length];
+        for (int i = 0; i < items.length; i++) {
+            keys[i] = (long) items[i] << 32 | i;
+        }
+        Arrays.sort(keys);
+
+        boolean[] result = new boolean[items.length];
+        Node curr = head.next;
+        for (long key : keys) {
+            int item = (int) (key >> 32);
+            while (curr.key < item) {
+                curr = curr.next;
+            }
+            result[(int) key] = curr.key == item;
+        }
+        return result;
+    }
+
+    /* The operations of applyAll, in the low bits of each entry */
+    public static final int ADD = 0;
+    public static final int REMOVE = 1;
+    public static final int MEMBER = 2;
+
+    /**
+     * Applies a batch of operations mixing adds, removes and member calls
+     * in one walk. Each of the first count entries of batch holds a key
+     * in its high half, and in its low half an operation in the two
+     * lowest bits and above them the index where its result goes in
+     * results. The entries are sorted in place; operations on the same
+     * key are applied in the order of their indices.
+     */
+    public synchronized void applyAll(long[] batch, int count, boolean[] results)
+    {
+        Arrays.sort(batch, 0, count);
+
+        Node pred = head;
+        for (int i = 0; i < count; i++) {
+            int item = (int) (batch[i] >> 32);
+            int op = (int) batch[i] & 3;
+            int index = (int) batch[i] >>> 2;
+            while (pred.next.key < item) {
+                pred = pred.next;
+            }
+            boolean present = pred.next.key == item;
+            if (op == ADD && !present) {
+                Node node = new Node(item);
+                node.next = pred.next;
+                pred.next = node;
+                results[index] = true;
+            } else if (op == REMOVE && present) {
+                pred.next = pred.next.next;
+                results[index] = true;
+            } else {
+                results[index] = op == MEMBER && present;
+            }
+        }
+    }
+
     public synchronized List<Integer> asList()
     {
         ArrayList<Integer> l = new ArrayList<Integer>();
@@ -0,0 +1,159 @@
+package sequential;
+
+/*
+    The list of SetList, guarded by a StampedLock instead of the monitor
+    of the set. Integers are supposed to be greater than MIN_VALUE and
+    smaller than MAX_VALUE.
+
+    Searches run under an optimistic read stamp: they take no lock at
+    all, and their result only counts if no write lock was taken in the
+    meantime. Otherwise they run again under the read lock, which
+    readers share. A search may see the list in the middle of a write,
+    but it still ends: keys only grow along next pointers, removed nodes
+    keep theirs, and a next pointer which is not there yet stops it.
+
+    An add which finds its key, or a remove which does not, is done with
+    the optimistic read alone. The others turn their stamp into the
+    write lock if nobody wrote since, and keep the place they found;
+    otherwise they take the write lock and search again.
+*/
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.StampedLock;
+
+import test.Set;
+
+public class StampedSetList implements Set {
+
+    private final Node head;
+
+    private final StampedLock lock = new StampedLock();
+
+    public StampedSetList() {
+        head = new Node(Integer.MIN_VALUE);
+        head.next = new Node(Integer.MAX_VALUE);
+    }
+
+    /**
+     * The last node whose key is smaller than item, or null if the
+     * search met a node whose next pointer it could not see yet.
+     */
+    private Node findPred(int item) {
+        Node pred = head;
+        Node curr = head.next;
+        while (curr != null && curr.key < item) {
+            pred = curr;
+            curr = pred.next;
+        }
+        return curr == null ? null : pred;
+    }
+
+    public boolean add(int item) {
+        long stamp = lock.tryOptimisticRead();
+        Node pred = null;
+        if (stamp != 0) {
+            pred = findPred(item);
+            Node curr = pred == null ? null : pred.next;
+            if (curr != null && curr.key == item && lock.validate(stamp)) {
+                return false;
+            }
+        }
+
+        long ws = pred == null ? 0 : lock.tryConvertToWriteLock(stamp);
+        if (ws == 0) {
+            ws = lock.writeLock();
+            pred = findPred(item);
+        }
+        try {
+            Node curr = pred.next;
+            if (curr.key == item) {
+                return false;
+            }
+            Node node = new Node(item);
+            node.next = curr;
+            pred.next = node;
+            return true;
+        } finally {
+            lock.unlockWrite(ws);
+        }
+    }
+
+    public boolean remove(int item) {
+        long stamp = lock.tryOptimisticRead();
+        Node pred = null;
+        if (stamp != 0) {
+            pred = findPred(item);
+            Node curr = pred == null ? null : pred.next;
+            if (curr != null && curr.key != item && lock.validate(stamp)) {
+                return false;
+            }
+        }
+
+        long ws = pred == null ? 0 : lock.tryConvertToWriteLock(stamp);
+        if (ws == 0) {
+            ws = lock.writeLock();
+            pred = findPred(item);
+        }
+        try {
+            Node curr = pred.next;
+            if (curr.key != item) {
+                return false;
+            }
+            pred.next = curr.next;
+            return true;
+        } finally {
+            lock.unlockWrite(ws);
+        }
+    }
+
+    public boolean member(int item) {
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0) {
+            Node pred = findPred(item);
+            Node curr = pred == null ? null : pred.next;
+            if (curr != null) {
+                boolean found = curr.key == item;
+                if (lock.validate(stamp)) {
+                    return found;
+                }
+            }
+        }
+
+        stamp = lock.readLock();
+        try {
+            return findPred(item).next.key == item;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    public void print() {
+        long stamp = lock.readLock();
+        try {
+            Node curr = head.next;
+            while (curr.next != null) {
+                System.out.print(curr.key + " ");
+                curr = curr.next;
+            }
+            System.out.println("");
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    public List<Integer> asList() {
+        long stamp = lock.readLock();
+        try {
+            ArrayList<Integer> l = new ArrayList<Integer>();
+            Node curr = head.next;
+            while (curr.next != null) {
+                l.add(curr.key);
+                curr = curr.next;
+            }
+            return l;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package test;
+
+import concurrent.AdaptiveSet;
+import org.junit.Test;
+import org.junit.runner.JUnitCore;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for the migrations of concurrent.AdaptiveSet.
+ */
+public class AdaptiveSetTest {
+    private static final int NUM_THREADS = 4;
+    private static final int NUM_KEYS = 1000;
+    private static final int READS_PER_ROUND = 20;
+
+    /**
+     * A list which grew becomes a table, with the same keys, and goes
+     * back to a list once most of them are removed.
+     */
+    @Test
+    public void migrationTest() {
+        AdaptiveSet s = new AdaptiveSet();
+        for (int key = 0; key < NUM_KEYS; key++) {
+            assertTrue(s.add(key));
+        }
+        assertTrue(s.hashed());
+        assertEquals(NUM_KEYS, s.size());
+
+        for (int key = 3; key < NUM_KEYS; key++) {
+            assertTrue(s.remove(key));
+        }
+        /* Enough updates of its own that this thread checks the size */
+        for (int i = 0; i < AdaptiveSet.CHECK_PERIOD; i++) {
+            s.add(NUM_KEYS);
+            s.remove(NUM_KEYS);
+        }
+        assertFalse(s.hashed());
+        assertEquals(3, s.size());
+        assertEquals(Arrays.asList(0, 1, 2), s.asList());
+
+        List<Integer> expected = new ArrayList<Integer>();
+        for (int key = 0; key < NUM_KEYS; key++) {
+            s.add(key);
+            expected.add(key);
+        }
+        assertTrue(s.hashed());
+        assertEquals(expected, s.asList());
+    }
+
+    /**
+     * A list of a size between the two thresholds stays one if it is
+     * mostly read, and becomes a table if it is only updated.
+     */
+    @Test
+    public void mixTest() {
+        int size = (AdaptiveSet.GROW_READS + AdaptiveSet.GROW_UPDATES) / 2;
+        AdaptiveSet read = new AdaptiveSet();
+        AdaptiveSet updated = new AdaptiveSet();
+        for (int key = 0; key < size; key++) {
+            read(read, READS_PER_ROUND);
+            read.add(key);
+            updated.add(key);
+        }
+        for (int i = 0; i < AdaptiveSet.CHECK_PERIOD; i++) {
+            read(read, READS_PER_ROUND);
+            read.add(size);
+            read.remove(size);
+            updated.add(size);
+            updated.remove(size);
+        }
+        assertFalse(read.hashed());
+        assertTrue(updated.hashed());
+        assertEquals(updated.asList(), read.asList());
+    }
+
+    private static void read(AdaptiveSet s, int count) {
+        for (int i = 0; i < count; i++) {
+            s.member(i);
+        }
+    }
+
+    /**
+     * Writers grow the set and empty it again, so that it migrates back
+     * and forth between a list and a table, while readers check that
+     * the keys which stay in the set throughout never go missing during
+     * the migrations.
+     */
+    @Test
+    public void concurrentMigrationTest() throws InterruptedException {
+        final AdaptiveSet s = new AdaptiveSet();
+        final int[] kept = {-3, -2, -1};
+        for (int key : kept) {
+            s.add(key);
+        }
+
+        List<Thread> threads = Threads.start(NUM_THREADS, new Threads.Worker() {
+            public void run(int t) {
+                int first = t * NUM_KEYS;
+                for (int round = 0; round < 10; round++) {
+                    for (int key = first; key < first + NUM_KEYS; key++) {
+                        s.add(key);
+                    }
+                    for (int key = first; key < first + NUM_KEYS; key++) {
+                        s.remove(key);
+                    }
+                }
+            }
+        });
+
+        int missing = 0;
+        while (Threads.alive(threads)) {
+            for (int key : kept) {
+                if (!s.member(key)) {
+                    missing++;
+                }
+            }
+        }
+        Threads.join(threads);
+
+        assertEquals(0, missing);
+        assertEquals(kept.length, s.size());
+        assertEquals(Arrays.asList(-3, -2, -1), s.asList());
+
+        /* Enough updates of its own that this thread checks the size */
+        for (int i = 0; i < AdaptiveSet.CHECK_PERIOD; i++) {
+            s.add(0);
+            s.remove(0);
+        }
+        assertFalse(s.hashed());
+        assertEquals(Arrays.asList(-3, -2, -1), s.asList());
+
+        List<Integer> expected = new ArrayList<Integer>(Arrays.asList(-3, -2, -1));
+        for (int key = 0; key < NUM_KEYS; key++) {
+            s.add(key);
+            expected.add(key);
+        }
+        assertTrue(s.hashed());
+        assertEquals(expected, s.asList());
+    }
+
+    public static void main(String[] args) throws Exception {
+        JUnitCore.main("test.AdaptiveSetTest");
+    }
+}
@@ -48,6 +48,9 @@ public class Benchmarks {
 
     private static final int NUM_STEPS = 10000;
     private static final int BOUND = 10000;
+    /* contendedTest only writes, to a key range small enough to collide */
+    private static final int CONTENDED_OPS = 200000;
+    private static final int HOT_KEYS = 64;
     private final SetFactory setFact_;
     private final List<Integer> testData_;
     /* IMPORTANT NUM_STEPS must be divisible by NUM_THREADS */
@@ -150,6 +153,39 @@ public class Benchmarks {
         }
     }
 
+    @Test
+    public void contendedTest() {
+        final Set set = setFact_.getInstance();
+        List<Thread> threads = new ArrayList<Thread>(NUM_THREADS);
+
+        for (int i = 0; i < NUM_THREADS; ++i) {
+            final Random g = new Random(i);
+            Runnable code = new Runnable() {
+                public void run() {
+                    for (int op = 0; op < CONTENDED_OPS / NUM_THREADS; op++) {
+                        int key = g.nextInt(HOT_KEYS);
+                        if (g.nextBoolean()) {
+                            set.add(key);
+                        } else {
+                            set.remove(key);
+                        }
+                    }
+                }
+            };
+            threads.add(new Thread(code));
+        }
+        for (Thread t : threads) {
+            t.start();
+        }
+        try {
+            for (Thread t : threads) {
+                t.join();
+            }
+        } catch (InterruptedException e) {
+            fail(configuration_ + ": a thread was interrupted");
+        }
+    }
+
     private static boolean isPrime(int a) {
         for (int i = 2; i * i <= a; ++i) {
             if (a % i == 0) {
@@ -179,12 +215,124 @@ public class Benchmarks {
             }
         };
 
+        SetFactory stampedSetListFactory = new SetFactory() {
+            public Set getInstance() {
+                return new sequential.StampedSetList();
+            }
+        };
+
+        SetFactory flatCombiningSetFactory = new SetFactory() {
+            public Set getInstance() {
+                return new concurrent.FlatCombiningSet();
+            }
+        };
+
         SetFactory concurrentSetListFactory = new SetFactory() {
             public Set getInstance() {
                 return new concurrent.SetList();
             }
         };
 
+        SetFactory sharedIncrementSetListFactory = new SetFactory() {
+            public Set getInstance() {
+                return new concurrent.SetList(new concurrent.SharedIncrementClock());
+            }
+        };
+
+        SetFactory lazyClockSetListFactory = new SetFactory() {
+            public Set getInstance() {
+                return new concurrent.SetList(new concurrent.LazyClock());
+            }
+        };
+
+        SetFactory backoffSetListFactory = new SetFactory() {
+            public Set getInstance() {
+                return new concurrent.SetList(new concurrent.StrictClock(),
+                        new concurrent.ExponentialBackoff(16, 4096));
+            }
+        };
+
+        SetFactory spinSetListFactory = new SetFactory() {
+            public Set getInstance() {
+                return new concurrent.SetList(new concurrent.StrictClock(),
+                        new concurrent.SpinBackoff(64));
+            }
+        };
+
+        SetFactory yieldSetListFactory = new SetFactory() {
+            public Set getInstance() {
+                return new concurrent.SetList(new concurrent.StrictClock(),
+                        new concurrent.YieldBackoff(4));
+            }
+        };
+
+        SetFactory epochSetListFactory = new SetFactory() {
+            public Set getInstance() {
+                return new concurrent.SetList(new concurrent.StrictClock(),
+                        new concurrent.NoBackoff(), new concurrent.EpochReclamation());
+            }
+        };
+
+        SetFactory skipListFactory = new SetFactory() {
+            public Set getInstance() {
+                return new concurrent.SkipList();
+            }
+        };
+
+        SetFactory offHeapSetListFactory = new SetFactory() {
+            public Set getInstance() {
+                return new concurrent.OffHeapSetList();
+            }
+        };
+
+        SetFactory unrolledListFactory = new SetFactory() {
+            public Set getInstance() {
+                return new concurrent.UnrolledList();
+            }
+        };
+
+        SetFactory shardedSetFactory = new SetFactory() {
+            public Set getInstance() {
+                return new concurrent.ShardedSet(16, 0, BOUND);
+            }
+        };
+
+        SetFactory bitmapSetFactory = new SetFactory() {
+            public Set getInstance() {
+                return new concurrent.BitmapSet(0, BOUND + 1);
+            }
+        };
+
+        SetFactory compressedBitmapSetFactory = new SetFactory() {
+            public Set getInstance() {
+                return new concurrent.BitmapSet(0, BOUND + 1, true);
+            }
+        };
+
+        SetFactory lazyListFactory = new SetFactory() {
+            public Set getInstance() {
+                return new concurrent.LazyList();
+            }
+        };
+
+        SetFactory lockFreeListFactory = new SetFactory() {
+            public Set getInstance() {
+                return new concurrent.LockFreeList();
+            }
+        };
+
+        SetFactory splitOrderedSetFactory = new SetFactory() {
+            public Set getInstance() {
+                return new concurrent.SplitOrderedSet();
+            }
+        };
+
+        SetFactory adaptiveSetFactory = new SetFactory() {
+            public Set getInstance() {
+                return new concurrent.AdaptiveSet();
+            }
+        };
+
         List<Object[]> arguments = new ArrayList<Object[]>();
 
         /*
@@ -194,9 +342,63 @@ public class Benchmarks {
         arguments.add(new Object[]{
                 "synchronized" + params, setListFactory, testData, numThreads, slowdown
         });
+        arguments.add(new Object[]{
+                "stamped" + params, stampedSetListFactory, testData, numThreads, slowdown
+        });
+        arguments.add(new Object[]{
+                "flatcombining" + params, flatCombiningSetFactory, testData, numThreads, slowdown
+        });
         arguments.add(new Object[]{
                 "transactional" + params, concurrentSetListFactory, testData, numThreads, slowdown
         });
+        arguments.add(new Object[]{
+                "transactional gv4" + params, sharedIncrementSetListFactory, testData, numThreads, slowdown
+        });
+        arguments.add(new Object[]{
+                "transactional gv5" + params, lazyClockSetListFactory, testData, numThreads, slowdown
+        });
+        arguments.add(new Object[]{
+                "transactional backoff" + params, backoffSetListFactory, testData, numThreads, slowdown
+        });
+        arguments.add(new Object[]{
+                "transactional spin" + params, spinSetListFactory, testData, numThreads, slowdown
+        });
+        arguments.add(new Object[]{
+                "transactional yield" + params, yieldSetListFactory, testData, numThreads, slowdown
+        });
+        arguments.add(new Object[]{
+                "transactional epoch" + params, epochSetListFactory, testData, numThreads, slowdown
+        });
+        arguments.add(new Object[]{
+                "skiplist" + params, skipListFactory, testData, numThreads, slowdown
+        });
+        arguments.add(new Object[]{
+                "offheap" + params, offHeapSetListFactory, testData, numThreads, slowdown
+        });
+        arguments.add(new Object[]{
+                "unrolled" + params, unrolledListFactory, testData, numThreads, slowdown
+        });
+        arguments.add(new Object[]{
+                "sharded" + params, shardedSetFactory, testData, numThreads, slowdown
+        });
+        arguments.add(new Object[]{
+                "bitmap" + params, bitmapSetFactory, testData, numThreads, slowdown
+        });
+        arguments.add(new Object[]{
+                "bitmap compressed" + params, compressedBitmapSetFactory, testData, numThreads, slowdown
+        });
+        arguments.add(new Object[]{
+                "lazy" + params, lazyListFactory, testData, numThreads, slowdown
+        });
+        arguments.add(new Object[]{
+                "lockfree" + params, lockFreeListFactory, testData, numThreads, slowdown
+        });
+        arguments.add(new Object[]{
+                "splitordered" + params, splitOrderedSetFactory, testData, numThreads, slowdown
+        });
+        arguments.add(new Object[]{
+                "adaptive" + params, adaptiveSetFactory, testData, numThreads, slowdown
+        });
         /*}
         }*/
         return arguments;
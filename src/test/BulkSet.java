@@ -0,0 +1,18 @@
+package test;
+
+/**
+ * A Set which can apply a whole batch of keys in one traversal instead
+ * of one traversal per key. Keys may come in any order and repeat.
+ * Whether a batch is applied atomically depends on the implementation.
+ */
+public interface BulkSet extends Set
+{
+    /** Adds every key, and returns how many were not already there */
+    public int addAll(int... items);
+
+    /** Removes every key, and returns how many were there */
+    public int removeAll(int... items);
+
+    /** Tells, for every key in the order given, whether it is in the set */
+    public boolean[] containsAll(int... items);
+}
@@ -0,0 +1,174 @@
+/**
+ * Tests of the batch operations of the BulkSet implementations,
+ * against a java.util.TreeSet.
+ */
+
+package test;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+import org.junit.runner.JUnitCore;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+
+import java.util.*;
+
+@RunWith(Parameterized.class)
+public class BulkTest {
+    private static final int NUM_THREADS = 4;
+    private static final int NUM_KEYS = 2000;
+    private static final int NUM_BATCHES = 2000;
+    private static final int MAX_BATCH = 64;
+
+    interface BulkSetFactory {
+        public BulkSet getInstance();
+    }
+
+    private String configuration_;
+    private BulkSetFactory setFact_;
+
+    public BulkTest(String configuration, BulkSetFactory setFact) {
+        configuration_ = configuration;
+        setFact_ = setFact;
+    }
+
+    /* Keys in no particular order, with some repeated */
+    private static int[] randomBatch(Random g, int stride, int offset) {
+        int[] batch = new int[1 + g.nextInt(MAX_BATCH)];
+        for (int i = 0; i < batch.length; i++) {
+            batch[i] = g.nextInt(NUM_KEYS / stride) * stride + offset;
+        }
+        return batch;
+    }
+
+    private static int addAll(java.util.Set<Integer> model, int[] batch) {
+        int added = 0;
+        for (int key : batch) {
+            if (model.add(key)) {
+                added++;
+            }
+        }
+        return added;
+    }
+
+    private static int removeAll(java.util.Set<Integer> model, int[] batch) {
+        int removed = 0;
+        for (int key : batch) {
+            if (model.remove(key)) {
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    private static boolean[] containsAll(java.util.Set<Integer> model, int[] batch) {
+        boolean[] result = new boolean[batch.length];
+        for (int i = 0; i < batch.length; i++) {
+            result[i] = model.contains(batch[i]);
+        }
+        return result;
+    }
+
+    @Test
+    public void sequentialBulkTest() {
+        BulkSet set = setFact_.getInstance();
+        TreeSet<Integer> model = new TreeSet<Integer>();
+        Random g = new Random(0);
+
+        for (int b = 0; b < NUM_BATCHES; b++) {
+            int[] batch = randomBatch(g, 1, 0);
+            switch (g.nextInt(3)) {
+                case 0:
+                    assertEquals(configuration_, addAll(model, batch), set.addAll(batch));
+                    break;
+                case 1:
+                    assertEquals(configuration_, removeAll(model, batch), set.removeAll(batch));
+                    break;
+                default:
+                    assertEquals(configuration_, Arrays.toString(containsAll(model, batch)),
+                            Arrays.toString(set.containsAll(batch)));
+            }
+        }
+        assertEquals(configuration_, new ArrayList<Integer>(model), set.asList());
+    }
+
+    /**
+     * Every thread works on its own residue class, so its own model
+     * predicts exactly what its batches see, whatever the others do.
+     */
+    @Test
+    public void concurrentBulkTest() throws InterruptedException {
+        final BulkSet set = setFact_.getInstance();
+        final List<TreeSet<Integer>> models = new ArrayList<TreeSet<Integer>>();
+        final List<String> failures = Collections.synchronizedList(new ArrayList<String>());
+
+        for (int t = 0; t < NUM_THREADS; t++) {
+            models.add(new TreeSet<Integer>());
+        }
+        Threads.run(NUM_THREADS, new Threads.Worker() {
+            public void run(int t) {
+                TreeSet<Integer> model = models.get(t);
+                Random g = new Random(t);
+                for (int b = 0; b < NUM_BATCHES; b++) {
+                    int[] batch = randomBatch(g, NUM_THREADS, t);
+                    int op = g.nextInt(3);
+                    if (op == 0 && addAll(model, batch) != set.addAll(batch)) {
+                        failures.add("addAll");
+                    } else if (op == 1 && removeAll(model, batch) != set.removeAll(batch)) {
+                        failures.add("removeAll");
+                    } else if (op == 2
+                            && !Arrays.equals(containsAll(model, batch), set.containsAll(batch))) {
+                        failures.add("containsAll");
+                    }
+                }
+            }
+        });
+
+        assertEquals(configuration_, Collections.<String>emptyList(), failures);
+        TreeSet<Integer> expected = new TreeSet<Integer>();
+        for (TreeSet<Integer> model : models) {
+            expected.addAll(model);
+        }
+        assertEquals(configuration_, new ArrayList<Integer>(expected), set.asList());
+    }
+
+    @Parameters
+    public static Collection<Object[]> getParameters() {
+        BulkSetFactory setListFactory = new BulkSetFactory() {
+            public BulkSet getInstance() {
+                return new sequential.SetList();
+            }
+        };
+
+        BulkSetFactory concurrentSetListFactory = new BulkSetFactory() {
+            public BulkSet getInstance() {
+                return new concurrent.SetList();
+            }
+        };
+
+        BulkSetFactory unrolledListFactory = new BulkSetFactory() {
+            public BulkSet getInstance() {
+                return new concurrent.UnrolledList();
+            }
+        };
+
+        BulkSetFactory smallChunkUnrolledListFactory = new BulkSetFactory() {
+            public BulkSet getInstance() {
+                return new concurrent.UnrolledList(new concurrent.StrictClock(), 4);
+            }
+        };
+
+        return Arrays.asList(new Object[][]{
+                {"Using sequential SetList factory", setListFactory},
+                {"Using concurrent SetList factory", concurrentSetListFactory},
+                {"Using concurrent UnrolledList factory", unrolledListFactory},
+                {"Using concurrent UnrolledList (4 keys per chunk) factory", smallChunkUnrolledListFactory}
+        });
+    }
+
+    public static void main(String[] args) {
+        JUnitCore.main("test.BulkTest");
+    }
+}
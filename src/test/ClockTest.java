@@ -0,0 +1,118 @@
+package test;
+
+import concurrent.LazyClock;
+import concurrent.SharedIncrementClock;
+import concurrent.StrictClock;
+import concurrent.VersionClock;
+import org.junit.Test;
+import org.junit.runner.JUnitCore;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for the semantics of the concurrent.VersionClock implementations.
+ */
+public class ClockTest {
+    private static final int NUM_THREADS = 4;
+    private static final int OPS_PER_THREAD = 100000;
+
+    @Test
+    public void strictTest() {
+        VersionClock clock = new StrictClock();
+        int rv = clock.read();
+        int wv = clock.tick(rv);
+        assertEquals(rv + 1, wv);
+        assertTrue(clock.isExclusive(rv, wv));
+        assertEquals(wv, clock.read());
+
+        /* Somebody else committed in between */
+        rv = clock.read();
+        clock.tick(rv);
+        wv = clock.tick(rv);
+        assertFalse(clock.isExclusive(rv, wv));
+    }
+
+    /**
+     * Only the strict clock can tell that nobody else committed, as only
+     * it moves forward by exactly one on every commit.
+     */
+    @Test
+    public void exclusiveTest() {
+        for (VersionClock clock : new VersionClock[]{new SharedIncrementClock(), new LazyClock()}) {
+            String name = clock.getClass().getSimpleName();
+            for (int i = 0; i < 100; i++) {
+                int rv = clock.read();
+                int wv = clock.tick(rv);
+                assertTrue(name, wv > rv);
+                assertFalse(name, clock.isExclusive(rv, wv));
+                clock.observe(wv);
+            }
+        }
+    }
+
+    @Test
+    public void lazyTest() {
+        VersionClock clock = new LazyClock();
+        int rv = clock.read();
+        /* Commits do not move the clock, so they all get the same wv */
+        assertEquals(rv + 1, clock.tick(rv));
+        assertEquals(rv + 1, clock.tick(rv));
+        assertEquals(rv, clock.read());
+
+        /* Observing a newer version moves it, an older one does not */
+        clock.observe(rv + 10);
+        assertEquals(rv + 10, clock.read());
+        clock.observe(rv + 5);
+        assertEquals(rv + 10, clock.read());
+        assertEquals(rv + 11, clock.tick(clock.read()));
+    }
+
+    /**
+     * Threads observe the versions they get from tick, as aborting
+     * readers would. Each of them must see the clock, and the versions
+     * tick hands out, only go forward, and end up past every version
+     * which was observed.
+     */
+    @Test
+    public void concurrentLazyTest() throws InterruptedException {
+        final VersionClock clock = new LazyClock();
+        final AtomicInteger highest = new AtomicInteger(0);
+        final AtomicInteger backwards = new AtomicInteger(0);
+
+        Threads.run(NUM_THREADS, new Threads.Worker() {
+            public void run(int t) {
+                Random g = new Random(t);
+                int lastRead = 0;
+                int lastTick = 0;
+                for (int i = 0; i < OPS_PER_THREAD; i++) {
+                    int rv = clock.read();
+                    int wv = clock.tick(rv);
+                    if (rv < lastRead || wv < lastTick || wv <= rv) {
+                        backwards.incrementAndGet();
+                    }
+                    lastRead = rv;
+                    lastTick = wv;
+                    if (g.nextInt(4) == 0) {
+                        clock.observe(wv);
+                        int seen = highest.get();
+                        while (seen < wv && !highest.compareAndSet(seen, wv)) {
+                            seen = highest.get();
+                        }
+                    }
+                }
+            }
+        });
+
+        assertEquals(0, backwards.get());
+        assertEquals(highest.get(), clock.read());
+    }
+
+    public static void main(String[] args) throws Exception {
+        JUnitCore.main("test.ClockTest");
+    }
+}
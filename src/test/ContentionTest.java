@@ -0,0 +1,81 @@
+package test;
+
+import concurrent.ContentionManager;
+import concurrent.ExponentialBackoff;
+import concurrent.NoBackoff;
+import concurrent.SpinBackoff;
+import concurrent.YieldBackoff;
+import org.junit.Test;
+import org.junit.runner.JUnitCore;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for the bounds of the concurrent.ContentionManager implementations.
+ */
+public class ContentionTest {
+
+    @Test
+    public void exponentialTest() {
+        ExponentialBackoff backoff = new ExponentialBackoff(16, 4096);
+        assertEquals(16, backoff.limit(1));
+        assertEquals(32, backoff.limit(2));
+        assertEquals(2048, backoff.limit(8));
+        assertEquals(4096, backoff.limit(9));
+        assertEquals(4096, backoff.limit(10));
+
+        /* The limit never decreases, and the shift never overflows */
+        int previous = 0;
+        for (int aborts = 1; aborts < 100; aborts++) {
+            int limit = backoff.limit(aborts);
+            assertTrue(limit >= previous && limit <= 4096);
+            previous = limit;
+        }
+        assertEquals(4096, backoff.limit(Integer.MAX_VALUE));
+        assertEquals(Integer.MAX_VALUE, new ExponentialBackoff(2, Integer.MAX_VALUE).limit(40));
+        assertEquals(16, backoff.limit(0));
+    }
+
+    /**
+     * Even the longest backoffs stay short: the managers spin or yield,
+     * they never sleep.
+     */
+    @Test
+    public void boundedTest() {
+        ContentionManager[] managers = {
+                new NoBackoff(),
+                new SpinBackoff(64),
+                new YieldBackoff(4),
+                new ExponentialBackoff(16, 4096)
+        };
+        for (ContentionManager manager : managers) {
+            long start = System.nanoTime();
+            for (int aborts = 1; aborts <= 1000; aborts++) {
+                manager.onAbort(aborts);
+            }
+            manager.onAbort(Integer.MAX_VALUE);
+            long millis = (System.nanoTime() - start) / 1000000;
+            assertTrue(manager.getClass().getSimpleName() + " took " + millis + "ms", millis < 5000);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidExponentialTest() {
+        new ExponentialBackoff(64, 16);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidSpinTest() {
+        new SpinBackoff(-1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidYieldTest() {
+        new YieldBackoff(-1);
+    }
+
+    public static void main(String[] args) throws Exception {
+        JUnitCore.main("test.ContentionTest");
+    }
+}
@@ -0,0 +1,61 @@
+package test;
+
+import concurrent.OffHeapSetList;
+import org.junit.Test;
+import org.junit.runner.JUnitCore;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for the node reuse of concurrent.OffHeapSetList.
+ */
+public class OffHeapSetListTest {
+    private static final int NUM_THREADS = 4;
+    private static final int NUM_KEYS = 64;
+    private static final int OPS_PER_THREAD = 200000;
+
+    /**
+     * Every thread churns through its own keys on a small list, so that
+     * removed nodes are reused while the others still lock their way
+     * through them. Whatever the interleaving, each thread ends up
+     * holding exactly the keys it added last, and far fewer nodes were
+     * allocated than added.
+     */
+    @Test
+    public void concurrentReuseTest() throws InterruptedException {
+        final OffHeapSetList s = new OffHeapSetList();
+
+        Threads.run(NUM_THREADS, new Threads.Worker() {
+            public void run(int t) {
+                Random g = new Random(t);
+                for (int i = 0; i < OPS_PER_THREAD; i++) {
+                    int key = g.nextInt(NUM_KEYS / NUM_THREADS) * NUM_THREADS + t;
+                    if (g.nextBoolean()) {
+                        s.add(key);
+                    } else {
+                        s.remove(key);
+                    }
+                }
+                for (int key = t; key < NUM_KEYS; key += NUM_THREADS) {
+                    s.add(key);
+                }
+            }
+        });
+
+        List<Integer> expected = new ArrayList<Integer>(NUM_KEYS);
+        for (int i = 0; i < NUM_KEYS; i++) {
+            expected.add(i);
+        }
+        assertEquals(expected, s.asList());
+        assertTrue(s.allocatedNodes() < NUM_THREADS * OPS_PER_THREAD / 10);
+    }
+
+    public static void main(String[] args) throws Exception {
+        JUnitCore.main("test.OffHeapSetListTest");
+    }
+}
@@ -194,15 +194,136 @@ public class SetTest {
             }
         };
 
+        SetFactory stampedSetListFactory = new SetFactory() {
+            public Set getInstance() {
+                return new sequential.StampedSetList();
+            }
+        };
+
+        SetFactory flatCombiningSetFactory = new SetFactory() {
+            public Set getInstance() {
+                return new concurrent.FlatCombiningSet();
+            }
+        };
+
         SetFactory concurrentSetListFactory = new SetFactory() {
             public Set getInstance() {
                 return new concurrent.SetList();
             }
         };
 
+        SetFactory sharedIncrementSetListFactory = new SetFactory() {
+            public Set getInstance() {
+                return new concurrent.SetList(new concurrent.SharedIncrementClock());
+            }
+        };
+
+        SetFactory lazyClockSetListFactory = new SetFactory() {
+            public Set getInstance() {
+                return new concurrent.SetList(new concurrent.LazyClock());
+            }
+        };
+
+        SetFactory backoffSetListFactory = new SetFactory() {
+            public Set getInstance() {
+                return new concurrent.SetList(new concurrent.StrictClock(),
+                        new concurrent.ExponentialBackoff(16, 4096));
+            }
+        };
+
+        SetFactory epochSetListFactory = new SetFactory() {
+            public Set getInstance() {
+                return new concurrent.SetList(new concurrent.StrictClock(),
+                        new concurrent.NoBackoff(), new concurrent.EpochReclamation());
+            }
+        };
+
+        SetFactory skipListFactory = new SetFactory() {
+            public Set getInstance() {
+                return new concurrent.SkipList();
+            }
+        };
+
+        SetFactory offHeapSetListFactory = new SetFactory() {
+            public Set getInstance() {
+                return new concurrent.OffHeapSetList();
+            }
+        };
+
+        SetFactory unrolledListFactory = new SetFactory() {
+            public Set getInstance() {
+                return new concurrent.UnrolledList();
+            }
+        };
+
+        SetFactory smallChunkUnrolledListFactory = new SetFactory() {
+            public Set getInstance() {
+                return new concurrent.UnrolledList(new concurrent.StrictClock(), 4);
+            }
+        };
+
+        SetFactory shardedSetFactory = new SetFactory() {
+            public Set getInstance() {
+                return new concurrent.ShardedSet(4, 0, m);
+            }
+        };
+
+        SetFactory bitmapSetFactory = new SetFactory() {
+            public Set getInstance() {
+                return new concurrent.BitmapSet(0, m + 1);
+            }
+        };
+
+        SetFactory compressedBitmapSetFactory = new SetFactory() {
+            public Set getInstance() {
+                return new concurrent.BitmapSet(0, m + 1, true);
+            }
+        };
+
+        SetFactory lazyListFactory = new SetFactory() {
+            public Set getInstance() {
+                return new concurrent.LazyList();
+            }
+        };
+
+        SetFactory lockFreeListFactory = new SetFactory() {
+            public Set getInstance() {
+                return new concurrent.LockFreeList();
+            }
+        };
+
+        SetFactory splitOrderedSetFactory = new SetFactory() {
+            public Set getInstance() {
+                return new concurrent.SplitOrderedSet();
+            }
+        };
+
+        SetFactory adaptiveSetFactory = new SetFactory() {
+            public Set getInstance() {
+                return new concurrent.AdaptiveSet();
+            }
+        };
+
         return Arrays.asList(new Object[][]{
                 {"Using sequential SetList factory", setListFactory, testData, expectedRes},
-                {"Using concurrent SetList factory", concurrentSetListFactory, testData, expectedRes}
+                {"Using sequential StampedSetList factory", stampedSetListFactory, testData, expectedRes},
+                {"Using concurrent FlatCombiningSet factory", flatCombiningSetFactory, testData, expectedRes},
+                {"Using concurrent SetList factory", concurrentSetListFactory, testData, expectedRes},
+                {"Using concurrent SetList (GV4 clock) factory", sharedIncrementSetListFactory, testData, expectedRes},
+                {"Using concurrent SetList (GV5 clock) factory", lazyClockSetListFactory, testData, expectedRes},
+                {"Using concurrent SetList (backoff) factory", backoffSetListFactory, testData, expectedRes},
+                {"Using concurrent SetList (epoch reclamation) factory", epochSetListFactory, testData, expectedRes},
+                {"Using concurrent SkipList factory", skipListFactory, testData, expectedRes},
+                {"Using concurrent OffHeapSetList factory", offHeapSetListFactory, testData, expectedRes},
+                {"Using concurrent UnrolledList factory", unrolledListFactory, testData, expectedRes},
+                {"Using concurrent UnrolledList (4 keys per chunk) factory", smallChunkUnrolledListFactory, testData, expectedRes},
+                {"Using concurrent ShardedSet (4 shards) factory", shardedSetFactory, testData, expectedRes},
+                {"Using concurrent BitmapSet factory", bitmapSetFactory, testData, expectedRes},
+                {"Using concurrent BitmapSet (compressed) factory", compressedBitmapSetFactory, testData, expectedRes},
+                {"Using concurrent LazyList factory", lazyListFactory, testData, expectedRes},
+                {"Using concurrent LockFreeList factory", lockFreeListFactory, testData, expectedRes},
+                {"Using concurrent SplitOrderedSet factory", splitOrderedSetFactory, testData, expectedRes},
+                {"Using concurrent AdaptiveSet factory", adaptiveSetFactory, testData, expectedRes}
         });
     }
 
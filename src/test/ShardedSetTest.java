@@ -0,0 +1,56 @@
+package test;
+
+import concurrent.ShardedSet;
+import org.junit.Test;
+import org.junit.runner.JUnitCore;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.IntConsumer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for the range operations of concurrent.ShardedSet.
+ */
+public class ShardedSetTest {
+
+    /**
+     * Range operations of a ShardedSet cross shards in order, including
+     * the keys which fall outside the range it was cut for.
+     */
+    @Test
+    public void rangeTest() {
+        ShardedSet s = new ShardedSet(4, 0, 100);
+        for (int key = -10; key < 120; key += 7) {
+            assertTrue(s.add(key));
+        }
+
+        final List<Integer> keys = new ArrayList<Integer>();
+        s.forEachInRange(-5, 60, new IntConsumer() {
+            public void accept(int key) {
+                keys.add(key);
+            }
+        });
+        assertEquals(Arrays.asList(-3, 4, 11, 18, 25, 32, 39, 46, 53), keys);
+        assertEquals(19, s.countInRange(Integer.MIN_VALUE, Integer.MAX_VALUE));
+        assertEquals(4, s.countInRange(20, 48));
+
+        assertEquals(-10, s.firstAfter(Integer.MIN_VALUE));
+        assertEquals(53, s.firstAfter(46));
+        assertEquals(116, s.firstAfter(110));
+        assertEquals(Integer.MAX_VALUE, s.firstAfter(116));
+
+        List<Integer> all = s.asList();
+        List<Integer> sorted = new ArrayList<Integer>(all);
+        Collections.sort(sorted);
+        assertEquals(sorted, all);
+    }
+
+    public static void main(String[] args) throws Exception {
+        JUnitCore.main("test.ShardedSetTest");
+    }
+}
@@ -0,0 +1,49 @@
+package test;
+
+import concurrent.SplitOrderedSet;
+import org.junit.Test;
+import org.junit.runner.JUnitCore;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for the hashing of concurrent.SplitOrderedSet.
+ */
+public class SplitOrderedSetTest {
+    private static final int NUM_KEYS = 1 << 16;
+
+    /* Well above the chains of a uniform hash, well below those of a bad one */
+    private static final int MAX_CHAIN = 32;
+
+    /**
+     * Keys which are all multiples of a power of two must still spread
+     * over all the buckets, and come back out as they went in.
+     */
+    @Test
+    public void strideTest() {
+        for (int shift = 1; shift <= 12; shift++) {
+            SplitOrderedSet s = new SplitOrderedSet();
+            List<Integer> keys = new ArrayList<Integer>(NUM_KEYS);
+            for (int i = 0; i < NUM_KEYS; i++) {
+                int key = (i - NUM_KEYS / 2) << shift;
+                assertTrue(s.add(key));
+                keys.add(key);
+            }
+            for (int key : keys) {
+                assertTrue(s.member(key));
+            }
+
+            int longest = s.longestChain();
+            assertTrue("stride 2^" + shift + ": chain of " + longest, longest <= MAX_CHAIN);
+            assertEquals(keys, s.asList());
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        JUnitCore.main("test.SplitOrderedSetTest");
+    }
+}
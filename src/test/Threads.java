@@ -0,0 +1,65 @@
+package test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Spawns, starts and joins the threads of the concurrent tests.
+ */
+public final class Threads {
+
+    /**
+     * What the thread numbered t of a test runs.
+     */
+    public interface Worker {
+        void run(int t);
+    }
+
+    private Threads() {
+    }
+
+    /**
+     * Starts count threads, numbered from 0, which all run worker.
+     */
+    public static List<Thread> start(int count, final Worker worker) {
+        List<Thread> threads = new ArrayList<Thread>(count);
+        for (int t = 0; t < count; t++) {
+            final int number = t;
+            threads.add(new Thread(new Runnable() {
+                public void run() {
+                    worker.run(number);
+                }
+            }));
+        }
+        for (Thread t : threads) {
+            t.start();
+        }
+        return threads;
+    }
+
+    /**
+     * Whether any of threads is still running, for tests which check
+     * the set from the main thread in the meantime.
+     */
+    public static boolean alive(List<Thread> threads) {
+        for (Thread t : threads) {
+            if (t.isAlive()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public static void join(List<Thread> threads) throws InterruptedException {
+        for (Thread t : threads) {
+            t.join();
+        }
+    }
+
+    /**
+     * Runs worker on count threads and waits for all of them.
+     */
+    public static void run(int count, Worker worker) throws InterruptedException {
+        join(start(count, worker));
+    }
+}
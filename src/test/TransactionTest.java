@@ -0,0 +1,641 @@
+package test;
+
+import concurrent.Cursor;
+import concurrent.EpochReclamation;
+import concurrent.NoBackoff;
+import concurrent.SetList;
+import concurrent.StrictClock;
+import concurrent.TxStats;
+import org.junit.Test;
+import org.junit.runner.JUnitCore;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.List;
+import java.util.PrimitiveIterator;
+import java.util.Random;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntConsumer;
+import java.util.function.IntPredicate;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests for the multi-key transactions of concurrent.SetList.
+ */
+public class TransactionTest {
+    private static final int NUM_THREADS = 4;
+    private static final int NUM_KEYS = 1000;
+    private static final int OPS_PER_THREAD = 20000;
+
+    @Test
+    public void multiKeyTest() {
+        SetList s = new SetList();
+
+        assertEquals(3, s.addAll(5, 1, 3, 3));
+        assertEquals(1, s.addAll(1, 2));
+        assertEquals(Arrays.asList(1, 2, 3, 5), s.asList());
+
+        assertEquals(2, s.removeAll(5, 4, 1));
+        assertEquals(Arrays.asList(2, 3), s.asList());
+
+        assertTrue(s.move(2, 7));
+        assertFalse(s.move(2, 8));
+        assertFalse(s.move(3, 7));
+        assertTrue(s.move(7, 1));
+        assertFalse(s.move(3, 3));
+        assertFalse(s.move(4, 4));
+        assertEquals(Arrays.asList(1, 3), s.asList());
+    }
+
+    @Test
+    public void statsTest() {
+        SetList s = new SetList();
+        TxStats stats = s.stats();
+
+        s.add(1);
+        s.add(2);
+        s.add(2);
+        s.remove(1);
+        s.addAll(3, 4);
+
+        assertEquals(5, stats.getOperations());
+        assertEquals(4, stats.getCommits());
+        assertEquals(0, stats.getAborts());
+
+        stats.reset();
+        assertEquals(0, stats.getOperations());
+    }
+
+    /**
+     * Threads hammering a few keys abort each other for every reason the
+     * traversal and the validation can find; keep them at it until each
+     * of those counters moved, then read the counters over JMX too.
+     */
+    @Test
+    public void concurrentStatsTest() throws Exception {
+        final SetList s = new SetList();
+        final TxStats stats = s.stats();
+        long deadline = System.currentTimeMillis() + 60000;
+
+        for (int round = 0; stats.getLockedAborts() == 0 || stats.getVersionAborts() == 0
+                || stats.getValidationFailures() == 0; round++) {
+            assertTrue(stats.toString(), System.currentTimeMillis() < deadline);
+            final int seed = round * 2 * NUM_THREADS;
+            Threads.run(2 * NUM_THREADS, new Threads.Worker() {
+                public void run(int t) {
+                    Random g = new Random(seed + t);
+                    for (int i = 0; i < OPS_PER_THREAD; i++) {
+                        int key = g.nextInt(32);
+                        if (g.nextBoolean()) {
+                            s.add(key);
+                        } else {
+                            s.remove(key);
+                        }
+                    }
+                }
+            });
+        }
+
+        assertTrue(stats.getRetriesPerOperation() > 0);
+        assertTrue(stats.getTraversedNodes() > 0);
+        assertTrue(stats.getTraversalPerOperation() > 0);
+        assertTrue(stats.getCommits() <= stats.getOperations());
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = stats.register("concurrentStatsTest");
+        try {
+            assertTrue(server.isRegistered(name));
+            assertEquals(stats.getCommits(), server.getAttribute(name, "Commits"));
+            assertEquals(stats.getLockedAborts(), server.getAttribute(name, "LockedAborts"));
+            assertEquals(stats.getVersionAborts(), server.getAttribute(name, "VersionAborts"));
+            assertEquals(stats.getValidationFailures(), server.getAttribute(name, "ValidationFailures"));
+            server.invoke(name, "reset", null, null);
+            assertEquals(0L, server.getAttribute(name, "Operations"));
+        } finally {
+            server.unregisterMBean(name);
+        }
+    }
+
+    /**
+     * Read-only transactions leave no trace in the statistics.
+     */
+    @Test
+    public void readOnlyTest() {
+        SetList s = new SetList();
+        TxStats stats = s.stats();
+        s.addAll(1, 2, 3);
+        stats.reset();
+
+        assertTrue(s.member(2));
+        assertFalse(s.member(4));
+        assertEquals("[true, false]", Arrays.toString(s.containsAll(3, 5)));
+        assertEquals(3, s.countInRange(0, 10));
+        assertEquals(3, s.firstAfter(2));
+        assertEquals(0, stats.getOperations());
+        assertEquals(0, stats.getAborts());
+
+        assertTrue(s.add(4));
+        assertEquals(1, stats.getOperations());
+        assertEquals(1, stats.getCommits());
+    }
+
+    /**
+     * Moves never change the size of the set, so if one of them was not
+     * atomic we would end up with a key lost or duplicated.
+     */
+    @Test
+    public void concurrentMoveTest() throws InterruptedException {
+        final SetList s = new SetList();
+        for (int i = 0; i < NUM_KEYS; i += 2) {
+            s.add(i);
+        }
+
+        Threads.run(NUM_THREADS, new Threads.Worker() {
+            public void run(int t) {
+                Random g = new Random(t);
+                for (int i = 0; i < OPS_PER_THREAD; i++) {
+                    s.move(g.nextInt(NUM_KEYS), g.nextInt(NUM_KEYS));
+                }
+            }
+        });
+
+        assertEquals(NUM_KEYS / 2, s.asList().size());
+    }
+
+    /**
+     * Each thread adds and removes its own batches, so at the end the
+     * set holds exactly the batches that were added last.
+     */
+    @Test
+    public void concurrentBatchTest() throws InterruptedException {
+        final SetList s = new SetList();
+        final AtomicInteger partialBatches = new AtomicInteger(0);
+
+        Threads.run(NUM_THREADS, new Threads.Worker() {
+            public void run(int t) {
+                int[] batch = new int[NUM_KEYS / NUM_THREADS];
+                for (int i = 0; i < batch.length; i++) {
+                    batch[i] = i * NUM_THREADS + t;
+                }
+                for (int i = 0; i < 100; i++) {
+                    if (s.addAll(batch) != batch.length) {
+                        partialBatches.incrementAndGet();
+                    }
+                    if (s.removeAll(batch) != batch.length) {
+                        partialBatches.incrementAndGet();
+                    }
+                }
+                s.addAll(batch);
+            }
+        });
+
+        assertEquals(0, partialBatches.get());
+        List<Integer> expected = new ArrayList<Integer>(NUM_KEYS);
+        for (int i = 0; i < NUM_KEYS; i++) {
+            expected.add(i);
+        }
+        assertEquals(expected, s.asList());
+    }
+
+    /**
+     * Every thread churns through its own keys, so whatever the
+     * interleaving it ends up holding exactly the keys it added last,
+     * and the nodes it removed must have come back through its pool.
+     */
+    @Test
+    public void epochReclamationTest() throws InterruptedException {
+        final EpochReclamation reclamation = new EpochReclamation();
+        final SetList s = new SetList(new StrictClock(), new NoBackoff(), reclamation);
+
+        Threads.run(NUM_THREADS, new Threads.Worker() {
+            public void run(int t) {
+                Random g = new Random(t);
+                for (int i = 0; i < OPS_PER_THREAD; i++) {
+                    int key = g.nextInt(NUM_KEYS / NUM_THREADS) * NUM_THREADS + t;
+                    if (g.nextBoolean()) {
+                        s.add(key);
+                    } else {
+                        s.remove(key);
+                    }
+                    s.member(g.nextInt(NUM_KEYS));
+                }
+                for (int key = t; key < NUM_KEYS; key += NUM_THREADS) {
+                    s.add(key);
+                }
+            }
+        });
+
+        List<Integer> expected = new ArrayList<Integer>(NUM_KEYS);
+        for (int i = 0; i < NUM_KEYS; i++) {
+            expected.add(i);
+        }
+        assertEquals(expected, s.asList());
+        assertTrue(reclamation.reusedNodes() > 0);
+    }
+
+    /**
+     * Writers keep adding and removing the odd keys of a large list,
+     * with no backoff, while asList keeps listing it. It always comes
+     * back, with every even key, which stays in the set throughout,
+     * exactly once, and the keys in ascending order.
+     */
+    @Test
+    public void concurrentAsListTest() throws InterruptedException {
+        final SetList s = new SetList(new StrictClock(), new NoBackoff(), new EpochReclamation());
+        int[] even = new int[10 * NUM_KEYS];
+        for (int i = 0; i < even.length; i++) {
+            even[i] = 2 * i;
+        }
+        s.addAll(even);
+
+        List<Thread> threads = Threads.start(NUM_THREADS, new Threads.Worker() {
+            public void run(int t) {
+                Random g = new Random(t);
+                for (int i = 0; i < OPS_PER_THREAD; i++) {
+                    int key = 2 * g.nextInt(10 * NUM_KEYS) + 1;
+                    if (!s.add(key)) {
+                        s.remove(key);
+                    }
+                }
+            }
+        });
+
+        int wrong = 0;
+        int lists = 0;
+        while (Threads.alive(threads)) {
+            int evens = 0;
+            int last = Integer.MIN_VALUE;
+            for (int key : s.asList()) {
+                if (key <= last) {
+                    wrong++;
+                }
+                if (key % 2 == 0) {
+                    evens++;
+                }
+                last = key;
+            }
+            if (evens != even.length) {
+                wrong++;
+            }
+            lists++;
+        }
+        Threads.join(threads);
+
+        assertEquals(0, wrong);
+        assertTrue(lists > 0);
+    }
+
+    @Test
+    public void cursorTest() {
+        SetList s = new SetList();
+        Cursor c = s.cursor();
+
+        for (int i = 1; i <= 100; i++) {
+            assertTrue(c.add(2 * i));
+        }
+        /* The cursor sits at 200 now, so these have to start from the head */
+        assertTrue(c.add(1));
+        assertFalse(c.add(2));
+        assertTrue(c.member(100));
+
+        /* Removing the remembered node through another cursor invalidates it */
+        assertTrue(c.add(201));
+        assertTrue(s.remove(201));
+        assertTrue(c.add(203));
+        assertFalse(c.member(201));
+        assertTrue(c.remove(203));
+        assertFalse(c.remove(203));
+
+        List<Integer> expected = new ArrayList<Integer>();
+        expected.add(1);
+        for (int i = 1; i <= 100; i++) {
+            expected.add(2 * i);
+        }
+        assertEquals(expected, s.asList());
+    }
+
+    /**
+     * Each thread walks its own keys upwards through its own cursor,
+     * while the others keep removing and recycling nodes around it.
+     */
+    @Test
+    public void concurrentCursorTest() throws InterruptedException {
+        final SetList s = new SetList(new StrictClock(), new NoBackoff(), new EpochReclamation());
+
+        Threads.run(NUM_THREADS, new Threads.Worker() {
+            public void run(int t) {
+                Random g = new Random(t);
+                Cursor c = s.cursor();
+                for (int i = 0; i < OPS_PER_THREAD; i++) {
+                    int key = g.nextInt(NUM_KEYS / NUM_THREADS) * NUM_THREADS + t;
+                    c.add(key);
+                    c.remove(key + NUM_THREADS);
+                }
+                for (int key = t; key < NUM_KEYS; key += NUM_THREADS) {
+                    c.add(key);
+                }
+            }
+        });
+
+        List<Integer> expected = new ArrayList<Integer>(NUM_KEYS);
+        for (int i = 0; i < NUM_KEYS; i++) {
+            expected.add(i);
+        }
+        assertEquals(expected, s.asList());
+    }
+
+    @Test
+    public void rangeTest() {
+        SetList s = new SetList();
+        s.addAll(1, 3, 5, 7, 9);
+
+        final List<Integer> keys = new ArrayList<Integer>();
+        s.forEachInRange(3, 9, new IntConsumer() {
+            public void accept(int key) {
+                keys.add(key);
+            }
+        });
+        assertEquals(Arrays.asList(3, 5, 7), keys);
+
+        assertEquals(5, s.countInRange(Integer.MIN_VALUE, Integer.MAX_VALUE));
+        assertEquals(2, s.countInRange(2, 6));
+        assertEquals(0, s.countInRange(6, 6));
+        assertEquals(0, s.countInRange(9, 1));
+
+        assertEquals(1, s.firstAfter(Integer.MIN_VALUE));
+        assertEquals(5, s.firstAfter(3));
+        assertEquals(5, s.firstAfter(4));
+        assertEquals(Integer.MAX_VALUE, s.firstAfter(9));
+        assertEquals(Integer.MAX_VALUE, s.firstAfter(Integer.MAX_VALUE));
+    }
+
+    /**
+     * Moves keep the size of the set constant, so a range query which
+     * saw some moves only half done would count the wrong number of keys.
+     */
+    @Test
+    public void concurrentRangeTest() throws InterruptedException {
+        final SetList s = new SetList();
+        for (int i = 0; i < NUM_KEYS; i += 2) {
+            s.add(i);
+        }
+
+        List<Thread> threads = Threads.start(NUM_THREADS, new Threads.Worker() {
+            public void run(int t) {
+                Random g = new Random(t);
+                for (int i = 0; i < OPS_PER_THREAD; i++) {
+                    s.move(g.nextInt(NUM_KEYS), g.nextInt(NUM_KEYS));
+                }
+            }
+        });
+
+        final int[] seen = new int[2];
+        int inconsistent = 0;
+        while (Threads.alive(threads)) {
+            if (s.countInRange(0, NUM_KEYS) != NUM_KEYS / 2) {
+                inconsistent++;
+            }
+            seen[0] = 0;
+            seen[1] = -1;
+            s.forEachInRange(0, NUM_KEYS, new IntConsumer() {
+                public void accept(int key) {
+                    if (key > seen[1]) {
+                        seen[0]++;
+                    }
+                    seen[1] = key;
+                }
+            });
+            if (seen[0] != NUM_KEYS / 2) {
+                inconsistent++;
+            }
+        }
+        Threads.join(threads);
+
+        assertEquals(0, inconsistent);
+        assertEquals(NUM_KEYS / 2, s.countInRange(0, NUM_KEYS));
+    }
+
+    @Test
+    public void snapshotTest() {
+        SetList s = new SetList();
+        int[] keys = new int[5 * NUM_KEYS];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = 3 * i;
+        }
+        s.addAll(keys);
+
+        assertEquals(Arrays.toString(keys), Arrays.toString(s.stream().toArray()));
+        assertEquals(Arrays.toString(keys), Arrays.toString(s.parallelStream().toArray()));
+        assertEquals(s.stream().asLongStream().sum(), s.parallelStream().asLongStream().sum());
+
+        /* The two halves of a split cover the set between them, in order */
+        Spliterator.OfInt suffix = s.spliterator();
+        Spliterator.OfInt prefix = suffix.trySplit();
+        final List<Integer> seen = new ArrayList<Integer>();
+        IntConsumer collect = new IntConsumer() {
+            public void accept(int key) {
+                seen.add(key);
+            }
+        };
+        prefix.forEachRemaining(collect);
+        assertTrue(seen.size() > 0 && seen.size() < keys.length);
+        suffix.forEachRemaining(collect);
+        assertEquals(s.asList(), seen);
+
+        /* A write behind an iterator is not seen: it finishes the version it started */
+        PrimitiveIterator.OfInt it = s.iterator();
+        assertEquals(0, it.nextInt());
+        assertEquals(3, it.nextInt());
+        s.add(1);
+        List<Integer> before = s.asList();
+        before.remove(Integer.valueOf(1));
+        assertEquals(before.subList(2, before.size()), rest(it));
+        s.remove(1);
+
+        /* One ahead of it moves it to the newer version, which starts with what it read */
+        it = s.iterator();
+        assertEquals(0, it.nextInt());
+        assertEquals(3, it.nextInt());
+        s.remove(3 * NUM_KEYS);
+        s.add(3 * NUM_KEYS + 1);
+        List<Integer> after = s.asList();
+        assertEquals(after.subList(2, after.size()), rest(it));
+        s.add(3 * NUM_KEYS);
+        s.remove(3 * NUM_KEYS + 1);
+
+        /* With writes both behind and ahead, no single version holds what it read */
+        it = s.iterator();
+        assertEquals(0, it.nextInt());
+        assertEquals(3, it.nextInt());
+        s.add(1);
+        s.remove(3 * NUM_KEYS);
+        try {
+            rest(it);
+            fail();
+        } catch (ConcurrentModificationException e) {
+            /* expected */
+        }
+        s.remove(1);
+        s.add(3 * NUM_KEYS);
+
+        /* Once split, a spliterator cannot move, as its sibling shares its version */
+        suffix = s.spliterator();
+        prefix = suffix.trySplit();
+        assertTrue(prefix.tryAdvance(collect));
+        s.remove(keys[keys.length - 1]);
+        try {
+            suffix.forEachRemaining(collect);
+            fail();
+        } catch (ConcurrentModificationException e) {
+            /* expected */
+        }
+        s.add(keys[keys.length - 1]);
+
+        /* A weak iterator goes on at the newer version, behind or ahead */
+        it = Spliterators.iterator(s.weakSpliterator());
+        assertEquals(0, it.nextInt());
+        assertEquals(3, it.nextInt());
+        s.add(1);
+        s.remove(3 * NUM_KEYS);
+        s.add(3 * NUM_KEYS + 1);
+        List<Integer> rest = rest(it);
+        /* 1 is behind the iterator, 3 * NUM_KEYS is gone, 3 * NUM_KEYS + 1 is new */
+        assertEquals(keys.length - 2, rest.size());
+        assertFalse(rest.contains(1));
+        assertFalse(rest.contains(3 * NUM_KEYS));
+        assertTrue(rest.contains(3 * NUM_KEYS + 1));
+        assertEquals(6, (int) rest.get(0));
+    }
+
+    private static List<Integer> rest(PrimitiveIterator.OfInt it) {
+        List<Integer> rest = new ArrayList<Integer>();
+        while (it.hasNext()) {
+            rest.add(it.nextInt());
+        }
+        return rest;
+    }
+
+    /**
+     * Writers keep adding and removing the odd keys while weak streams
+     * sum the set. The streams finish, they count every even key, which
+     * stays in the set throughout, exactly once, and nothing but keys of
+     * the set.
+     */
+    @Test
+    public void concurrentWeakStreamTest() throws InterruptedException {
+        final SetList s = new SetList();
+        long evenSum = 0;
+        long oddSum = 0;
+        for (int i = 0; i < 10 * NUM_KEYS; i += 2) {
+            s.add(i);
+            evenSum += i;
+            oddSum += i + 1;
+        }
+
+        List<Thread> threads = Threads.start(NUM_THREADS, new Threads.Worker() {
+            public void run(int t) {
+                Random g = new Random(t);
+                for (int i = 0; i < OPS_PER_THREAD; i++) {
+                    int key = 2 * g.nextInt(5 * NUM_KEYS) + 1;
+                    if (!s.add(key)) {
+                        s.remove(key);
+                    }
+                }
+            }
+        });
+
+        int wrong = 0;
+        int sums = 0;
+        while (Threads.alive(threads)) {
+            long sum = s.weakParallelStream().asLongStream().sum();
+            if (sum < evenSum || sum > evenSum + oddSum) {
+                wrong++;
+            }
+            long even = s.weakParallelStream().filter(new IntPredicate() {
+                public boolean test(int key) {
+                    return key % 2 == 0;
+                }
+            }).asLongStream().sum();
+            if (even != evenSum) {
+                wrong++;
+            }
+            if (s.weakStream().filter(new IntPredicate() {
+                public boolean test(int key) {
+                    return key < 0 || key >= 10 * NUM_KEYS;
+                }
+            }).count() != 0) {
+                wrong++;
+            }
+            sums++;
+        }
+        Threads.join(threads);
+
+        assertEquals(0, wrong);
+        assertTrue(sums > 0);
+        assertEquals(s.asList().size(), s.weakParallelStream().count());
+    }
+
+    /**
+     * Moves keep the size of the set constant, so a stream which mixed
+     * versions could miss a key or count one twice. Snapshot streams,
+     * sequential or parallel, count exactly the keys of the set, or
+     * throw.
+     */
+    @Test
+    public void concurrentSnapshotTest() throws InterruptedException {
+        final SetList s = new SetList();
+        for (int i = 0; i < 10 * NUM_KEYS; i += 2) {
+            s.add(i);
+        }
+
+        List<Thread> threads = Threads.start(NUM_THREADS, new Threads.Worker() {
+            public void run(int t) {
+                Random g = new Random(t);
+                for (int i = 0; i < OPS_PER_THREAD; i++) {
+                    s.move(g.nextInt(10 * NUM_KEYS), g.nextInt(10 * NUM_KEYS));
+                }
+            }
+        });
+
+        int wrong = 0;
+        int counts = 0;
+        while (Threads.alive(threads)) {
+            try {
+                if (s.stream().count() != 5 * NUM_KEYS) {
+                    wrong++;
+                }
+                counts++;
+            } catch (ConcurrentModificationException e) {
+                /* Not a snapshot, and it said so */
+            }
+            try {
+                if (s.parallelStream().count() != 5 * NUM_KEYS) {
+                    wrong++;
+                }
+                counts++;
+            } catch (ConcurrentModificationException e) {
+                /* Not a snapshot, and it said so */
+            }
+        }
+        Threads.join(threads);
+
+        assertEquals(0, wrong);
+        assertTrue(counts > 0);
+        assertEquals(5 * NUM_KEYS, s.parallelStream().count());
+    }
+
+    public static void main(String[] args) throws Exception {
+        JUnitCore.main("test.TransactionTest");
+    }
+}